@@ -116,11 +116,12 @@ public interface Cache {
 	<T> Map<String, T> getAll(List<String> ids);
 
 	/**
-	 * Read a number of objects given a list of their ids.
+	 * Read a number of objects given a list of their ids. Implementations should read all objects
+	 * in one bulk operation (a single round-trip for distributed caches) and must not modify the list of ids.
 	 * @param appid the name of the application
 	 * @param <T> the type of object to be cached
 	 * @param ids the ids, not null or empty
-	 * @return a map of the objects that are contained in cache (may be empty)
+	 * @return a map of the objects that are contained in cache (may be empty), in the order of the given ids
 	 * @see #getAll(java.util.List)
 	 */
 	<T> Map<String, T> getAll(String appid, List<String> ids);
@@ -158,7 +159,8 @@ public interface Cache {
 	void removeAll(List<String> ids);
 
 	/**
-	 * Remove a number of objects from cache given a list of their ids.
+	 * Remove a number of objects from cache given a list of their ids. Implementations should remove all objects
+	 * in one bulk operation (a single round-trip for distributed caches).
 	 * @param ids the ids, not null or empty
 	 * @param appid the name of the application
 	 * @see #removeAll(java.util.List)
@@ -110,8 +110,10 @@ public class MockCache implements Cache {
 		if (ids == null || StringUtils.isBlank(appid)) {
 			return map1;
 		}
-		ids.remove(null);
 		for (String id : ids) {
+			if (id == null) {
+				continue;
+			}
 			if (!isExpired((Long) getMap(appid).get(id + ":ttl"))) {
 				T t = (T) getMap(appid).get(id);
 				if (t != null) {
@@ -44,6 +44,9 @@ public class Webhook extends Sysprop {
 	@Stored private Boolean updateAll;
 	@Stored private Boolean deleteAll;
 
+	@Stored private Integer maxBatchSize;
+	@Stored private Integer maxLingerMillis;
+
 	/**
 	 * No-args constructor.
 	 */
@@ -236,6 +239,35 @@ public class Webhook extends Sysprop {
 		this.deleteAll = deleteAll;
 	}
 
+	/**
+	 * @return the maximum number of objects sent in one payload. Batching is disabled if not greater than 1.
+	 */
+	public Integer getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * @param maxBatchSize set to more than 1 to aggregate the events for this webhook into batches
+	 * of up to this many objects
+	 */
+	public void setMaxBatchSize(Integer maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds an event waits for a batch to fill up, before it's sent
+	 */
+	public Integer getMaxLingerMillis() {
+		return maxLingerMillis;
+	}
+
+	/**
+	 * @param maxLingerMillis the maximum time in milliseconds an event waits for a batch to fill up
+	 */
+	public void setMaxLingerMillis(Integer maxLingerMillis) {
+		this.maxLingerMillis = maxLingerMillis;
+	}
+
 	/**
 	 * Resets the secret key by generating a new one.
 	 */
@@ -17,12 +17,15 @@
  */
 package com.erudika.para.persistence;
 
+import com.erudika.para.Para;
 import com.erudika.para.annotations.Cached;
 import com.erudika.para.annotations.Indexed;
 import com.erudika.para.core.ParaObject;
+import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Pager;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * The core persistence interface. Stores and retrieves domain objects to/from a data store.
@@ -146,6 +149,22 @@ public interface DAO {
 	 */
 	<P extends ParaObject> Map<String, P> readAll(List<String> keys, boolean getAllColumns);
 
+	/**
+	 * Retrieves multiple objects from the data store, with only the selected fields populated.
+	 * The id, type, appid, creatorid and parentid of each object are always returned. Objects found in the cache
+	 * are returned whole, only the rest are read from the DB with projection. Partial objects are never cached.
+	 * The default implementation reads whole objects.
+	 * @param <P> the type of object
+	 * @param appid name of the {@link com.erudika.para.core.App}
+	 * @param keys a list of object ids
+	 * @param fields a list of field names to retrieve, if empty or null all fields are retrieved
+	 * @return a map of ids to objects
+	 */
+	@Cached(action = Cached.Action.GET_ALL)
+	default <P extends ParaObject> Map<String, P> readAll(String appid, List<String> keys, List<String> fields) {
+		return readAll(appid, keys, true);
+	}
+
 	/**
 	 * Reads a fixed number of objects. Used for scanning a data store page by page.
 	 * Calling this method would bypass the read cache and will hit the DB.
@@ -165,6 +184,31 @@ public interface DAO {
 	 */
 	<P extends ParaObject> List<P> readPage(Pager pager);
 
+	/**
+	 * Returns a lazy stream of all objects in the data store, read page by page.
+	 * The next page is read ahead in the background while the current one is consumed, so only two pages
+	 * are kept in memory. The pager's limit is the page size, and its last key and count are updated as pages
+	 * are read. Like {@link #readPage(java.lang.String, com.erudika.para.utils.Pager)}, this bypasses the cache.
+	 * @param <P> the type of object
+	 * @param appid name of the {@link com.erudika.para.core.App}
+	 * @param pager a {@link com.erudika.para.utils.Pager}
+	 * @return a stream of objects
+	 */
+	default <P extends ParaObject> Stream<P> readAllStream(String appid, Pager pager) {
+		return new PageIterator<P>(p -> readPage(appid, p), pager, Para.getExecutorService()).stream();
+	}
+
+	/**
+	 * Returns a lazy stream of all objects in the data store, read page by page.
+	 * @param <P> the type of object
+	 * @param pager a {@link com.erudika.para.utils.Pager}
+	 * @return a stream of objects
+	 * @see #readAllStream(java.lang.String, com.erudika.para.utils.Pager)
+	 */
+	default <P extends ParaObject> Stream<P> readAllStream(Pager pager) {
+		return readAllStream(Config.getRootAppIdentifier(), pager);
+	}
+
 	/**
 	 * Updates multiple objects.
 	 * @param <P> the type of object
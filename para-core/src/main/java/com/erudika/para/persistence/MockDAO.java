@@ -29,6 +29,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -137,6 +138,24 @@ public class MockDAO implements DAO {
 		return results;
 	}
 
+	@Override
+	@SuppressWarnings("unchecked")
+	public <P extends ParaObject> Stream<P> readAllStream(String appid, Pager pager) {
+		if (StringUtils.isBlank(appid)) {
+			return Stream.empty();
+		}
+		if (pager != null && !StringUtils.isBlank(pager.getLastKey())) {
+			return DAO.super.readAllStream(appid, pager);
+		}
+		// objects are already in memory - no need for paging
+		Pager p = (pager != null) ? pager : new Pager();
+		return getMap(appid).values().stream().map(obj -> {
+			p.setCount(p.getCount() + 1);
+			p.setLastKey(obj.getId());
+			return (P) obj;
+		});
+	}
+
 	@Override
 	public <P extends ParaObject> void updateAll(String appid, List<P> objects) {
 		if (!StringUtils.isBlank(appid) && objects != null) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.persistence;
+
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.utils.Pager;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An iterator which reads objects page by page and reads ahead one page in the background.
+ * At most two pages are held in memory at any time - the one being consumed and the next one.
+ * The next page is only requested when the consumer starts on the current one, so a slow consumer
+ * slows down the reader as well. If the read-ahead hasn't started by the time it is needed,
+ * it is executed on the calling thread.
+ * @param <P> type of object
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class PageIterator<P extends ParaObject> implements Iterator<P> {
+
+	private final Function<Pager, List<P>> pageReader;
+	private final Pager pager;
+	private final Executor executor;
+	private Iterator<P> current = Collections.emptyIterator();
+	private ReadAhead next;
+	private boolean done;
+
+	/**
+	 * Default constructor.
+	 * @param pageReader reads the next page and updates the pager
+	 * @param pager a {@link Pager} with a page size and, optionally, a last key to continue from
+	 * @param executor the executor used for reading ahead
+	 */
+	public PageIterator(Function<Pager, List<P>> pageReader, Pager pager, Executor executor) {
+		this.pageReader = pageReader;
+		this.pager = (pager != null) ? pager : new Pager();
+		this.executor = executor;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (done) {
+				return false;
+			}
+			List<P> page = (next == null) ? new ReadAhead().get() : next.get();
+			if (page == null || page.isEmpty()) {
+				done = true;
+				next = null;
+				return false;
+			}
+			current = page.iterator();
+			next = new ReadAhead();
+			try {
+				executor.execute(next);
+			} catch (RejectedExecutionException e) {
+				// will be read on the calling thread
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public P next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	/**
+	 * @return a sequential stream backed by this iterator
+	 */
+	public Stream<P> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Reads the next page in the background, or in the caller's thread if it's needed before the read starts.
+	 */
+	private final class ReadAhead implements Runnable {
+
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final CompletableFuture<List<P>> page = new CompletableFuture<>();
+
+		@Override
+		public void run() {
+			if (started.compareAndSet(false, true)) {
+				try {
+					page.complete(pageReader.apply(pager));
+				} catch (Throwable t) {
+					page.completeExceptionally(t);
+				}
+			}
+		}
+
+		List<P> get() {
+			run();
+			try {
+				return page.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
+}
@@ -35,6 +35,16 @@ public interface Queue {
 	 */
 	void push(String task);
 
+	/**
+	 * Pushes a message to a queue, to be delivered after a delay. The message stays in the queue,
+	 * rather than in memory, until then. Implementations which can't delay delivery push it right away.
+	 * @param task the message
+	 * @param delaySeconds the delay in seconds, at most {@code 900}
+	 */
+	default void push(String task, int delaySeconds) {
+		push(task);
+	}
+
 	/**
 	 * Returns the name of the queue.
 	 * @return the queue name
@@ -27,6 +27,9 @@ import java.util.Map;
 
 /**
  * The core search interface. Does indexing and searching for all domain objects.
+ * <br>
+ * {@link Pager#getSelect()} is passed along with every query, but implementations are not required to honour it
+ * and may return whole objects. Callers must trim the results themselves if they need only the selected fields.
  * @author Alex Bogdanovski [alex@erudika.com]
  */
 public interface Search {
@@ -355,6 +355,16 @@ public final class Config {
 		return NumberUtils.toInt(getConfigParam(key, Integer.toString(defaultValue)));
 	}
 
+	/**
+	 * Returns the long value of a configuration parameter.
+	 * @param key the param key
+	 * @param defaultValue the default param value
+	 * @return the value of a param
+	 */
+	public static long getConfigLong(String key, long defaultValue) {
+		return NumberUtils.toLong(getConfigParam(key, Long.toString(defaultValue)));
+	}
+
 	/**
 	 * Returns the double value of a configuration parameter.
 	 * @param key the param key
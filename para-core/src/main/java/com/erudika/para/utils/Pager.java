@@ -17,6 +17,8 @@
  */
 package com.erudika.para.utils;
 
+import java.util.List;
+
 /**
  * This class stores pagination data. It limits the results for queries in the {@link com.erudika.para.persistence.DAO}
  * and {@link com.erudika.para.search.Search} objects and also counts the total number of results that are returned.
@@ -31,6 +33,7 @@ public class Pager {
 	private int limit;
 	private String name;
 	private String lastKey;
+	private List<String> select;
 
 	/**
 	 * No-args constructor.
@@ -87,6 +90,23 @@ public class Pager {
 		this.lastKey = lastKey;
 	}
 
+	/**
+	 * The fields to return for each result (optional). This is only a hint - search engines may use it
+	 * to fetch only the selected fields instead of whole objects, but none of the built-in ones do.
+	 * @return a list of field names or null if all fields should be returned
+	 */
+	public List<String> getSelect() {
+		return select;
+	}
+
+	/**
+	 * Sets the fields to return for each result.
+	 * @param select a list of field names or null for all fields
+	 */
+	public void setSelect(List<String> select) {
+		this.select = select;
+	}
+
 	/**
 	 * Name of this pager object (optional). Used to distinguish between multiple pagers.
 	 * @return the name
@@ -188,6 +208,7 @@ public class Pager {
 	@Override
 	public String toString() {
 		return "Pager{" + "page=" + page + ", count=" + count + ", sortby=" + sortby + ", desc=" + desc +
-				", limit=" + limit + ", name=" + name + ", lastKey=" + lastKey + '}';
+				", limit=" + limit + ", name=" + name + ", lastKey=" + lastKey +
+				", select=" + select + '}';
 	}
 }
@@ -32,6 +32,7 @@ import com.erudika.para.search.SearchModule;
 import com.erudika.para.security.JWTRestfulAuthFilter;
 import com.erudika.para.security.SecurityModule;
 import com.erudika.para.storage.StorageModule;
+import com.erudika.para.utils.AppRegistry;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.HealthUtils;
 import com.erudika.para.utils.filters.CORSFilter;
@@ -148,13 +149,17 @@ public class ParaServer implements WebApplicationInitializer, Ordered {
 
 		Para.addInitListener(HealthUtils.getInstance());
 		Para.addInitListener(MetricsUtils.getInstance());
+		Para.addInitListener(AppRegistry.getInstance());
+		Para.addIOListener(AppRegistry.getInstance());
 
 		Para.getInitListeners().forEach((initListener) -> {
 			injectInto(initListener);
 		});
 
 		if (Config.WEBHOOKS_ENABLED) {
-			Para.addIOListener(new WebhookIOListener());
+			WebhookIOListener webhookListener = new WebhookIOListener();
+			Para.addIOListener(webhookListener);
+			Para.addDestroyListener(webhookListener);
 		}
 
 		Para.initialize();
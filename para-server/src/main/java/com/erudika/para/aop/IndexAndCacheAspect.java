@@ -22,6 +22,7 @@ import com.erudika.para.Para;
 import com.erudika.para.annotations.Cached;
 import com.erudika.para.annotations.Indexed;
 import com.erudika.para.cache.Cache;
+import com.erudika.para.cache.TieredCache;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.metrics.Metrics;
 import com.erudika.para.persistence.DAO;
@@ -32,12 +33,18 @@ import com.erudika.para.validation.ValidationUtils;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import org.aopalliance.intercept.MethodInterceptor;
@@ -59,6 +66,12 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 
 	private static final Logger logger = LoggerFactory.getLogger(IndexAndCacheAspect.class);
 
+	private static final DAOMethodHandler PASS_THROUGH = new DAOMethodHandler(null, null);
+
+	private final Map<Method, DAOMethodHandler> daoHandlers = buildDAOHandlers();
+	private final Map<Method, DAOMethodHandler> handlers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> loadsInFlight = new ConcurrentHashMap<>();
+
 	private Search search;
 	private Cache cache;
 
@@ -99,35 +112,36 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 	 * @throws Throwable error
 	 */
 	public Object invoke(MethodInvocation mi) throws Throwable {
-		if (!Modifier.isPublic(mi.getMethod().getModifiers())) {
+		Method daoMethod = mi.getMethod();
+		DAOMethodHandler handler = handlers.get(daoMethod);
+		if (handler == null) {
+			handler = handlers.computeIfAbsent(daoMethod, this::resolveHandler);
+		}
+		if (handler == PASS_THROUGH) {
 			return mi.proceed();
 		}
 
-		Method daoMethod = mi.getMethod();
 		Object[] args = mi.getArguments();
 		String appid = AOPUtils.getFirstArgOfString(args);
-
-		Method superMethod = null;
-		Indexed indexedAnno = null;
-		Cached cachedAnno = null;
-
-		try {
-			superMethod = DAO.class.getMethod(daoMethod.getName(), daoMethod.getParameterTypes());
-			indexedAnno = Config.isSearchEnabled() ? superMethod.getAnnotation(Indexed.class) : null;
-			cachedAnno = Config.isCacheEnabled() ? superMethod.getAnnotation(Cached.class) : null;
-			detectNestedInvocations(daoMethod);
-		} catch (Exception e) {
-			logger.error("Error in AOP layer!", e);
+		Indexed indexedAnno = Config.isSearchEnabled() ? handler.indexedAnno : null;
+		Cached cachedAnno = Config.isCacheEnabled() ? handler.cachedAnno : null;
+
+		if (handler.detectNested && !Config.IN_PRODUCTION) {
+			try {
+				detectNestedInvocations(daoMethod);
+			} catch (Exception e) {
+				logger.error("Error in AOP layer!", e);
+			}
 		}
 
 		Set<IOListener> ioListeners = Para.getIOListeners();
 		for (IOListener ioListener : ioListeners) {
-			ioListener.onPreInvoke(superMethod, args);
+			ioListener.onPreInvoke(handler.superMethod, args);
 			logger.debug("Executed {}.onPreInvoke().", ioListener.getClass().getName());
 		}
 
-		Object result = handleIndexing(indexedAnno, appid, daoMethod, args, mi);
-		Object cachingResult = handleCaching(cachedAnno, appid, daoMethod, args, mi);
+		Object result = handleIndexing(indexedAnno, appid, handler, args, mi);
+		Object cachingResult = handleCaching(cachedAnno, appid, handler, args, mi);
 
 		// we have a read operation without any result but we get back objects from cache
 		if (result == null && cachingResult != null) {
@@ -136,39 +150,69 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 
 		// both searching and caching are disabled - pass it through
 		if (indexedAnno == null && cachedAnno == null) {
-			result = invokeDAO(appid, daoMethod, mi);
+			result = invokeDAO(appid, handler, mi);
 		}
 
 		for (IOListener ioListener : ioListeners) {
-			ioListener.onPostInvoke(superMethod, args, result);
+			ioListener.onPostInvoke(handler.superMethod, args, result);
 			logger.debug("Executed {}.onPostInvoke().", ioListener.getClass().getName());
 		}
 
 		return result;
 	}
 
-	private Object invokeDAO(String appid, Method daoMethod, MethodInvocation mi) throws Throwable {
-		try (Metrics.Context context = Metrics.time(appid, daoMethod.getDeclaringClass(), daoMethod.getName())) {
+	/**
+	 * Maps a method of a DAO implementation to its handler. The {@link DAO} interface methods are resolved once,
+	 * so this is only called the first time an implementation method is invoked.
+	 * @param daoMethod the invoked method
+	 * @return a handler
+	 */
+	private DAOMethodHandler resolveHandler(Method daoMethod) {
+		if (!Modifier.isPublic(daoMethod.getModifiers())) {
+			return PASS_THROUGH;
+		}
+		for (Map.Entry<Method, DAOMethodHandler> entry : daoHandlers.entrySet()) {
+			Method superMethod = entry.getKey();
+			if (superMethod.getName().equals(daoMethod.getName()) &&
+					Arrays.equals(superMethod.getParameterTypes(), daoMethod.getParameterTypes())) {
+				return entry.getValue().forMethod(daoMethod);
+			}
+		}
+		logger.error("Error in AOP layer! Method {}.{}() is not declared in DAO.",
+				daoMethod.getDeclaringClass().getName(), daoMethod.getName());
+		return new DAOMethodHandler(null, daoMethod);
+	}
+
+	private static Map<Method, DAOMethodHandler> buildDAOHandlers() {
+		Map<Method, DAOMethodHandler> map = new HashMap<>();
+		for (Method method : DAO.class.getMethods()) {
+			map.put(method, new DAOMethodHandler(method, method));
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	private Object invokeDAO(String appid, DAOMethodHandler handler, MethodInvocation mi) throws Throwable {
+		try (Metrics.Context context = Metrics.time(appid, handler.daoClass, handler.timerNames)) {
 			return mi.proceed();
 		}
 	}
 
-	private Object handleIndexing(Indexed indexedAnno, String appid, Method daoMethod, Object[] args, MethodInvocation mi)
+	private Object handleIndexing(Indexed indexedAnno, String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi)
 			throws Throwable {
 		Object result = null;
 		if (indexedAnno != null) {
 			switch (indexedAnno.action()) {
 				case ADD:
-					result = addToIndexOperation(appid, daoMethod, args, mi);
+					result = addToIndexOperation(appid, handler, args, mi);
 					break;
 				case REMOVE:
-					result = removeFromIndexOperation(appid, daoMethod, args, mi);
+					result = removeFromIndexOperation(appid, handler, args, mi);
 					break;
 				case ADD_ALL:
-					result = addToIndexBatchOperation(appid, daoMethod, args, mi);
+					result = addToIndexBatchOperation(appid, handler, args, mi);
 					break;
 				case REMOVE_ALL:
-					result = removeFromIndexBatchOperation(appid, daoMethod, args, mi);
+					result = removeFromIndexBatchOperation(appid, handler, args, mi);
 					break;
 				default:
 					break;
@@ -177,25 +221,25 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object handleCaching(Cached cachedAnno, String appid, Method daoMethod, Object[] args, MethodInvocation mi)
+	private Object handleCaching(Cached cachedAnno, String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi)
 			throws Throwable {
 		Object result = null;
 		if (cachedAnno != null) {
 			switch (cachedAnno.action()) {
 				case GET:
-					result = readFromCacheOperation(appid, daoMethod, args, mi);
+					result = readFromCacheOperation(appid, handler, args, mi);
 					break;
 				case PUT:
-					addToCacheOperation(appid, args);
+					addToCacheOperation(appid, args, handler.update);
 					break;
 				case DELETE:
 					removeFromCacheOperation(appid, args);
 					break;
 				case GET_ALL:
-					result = readFromCacheBatchOperation(appid, daoMethod, args, mi);
+					result = readFromCacheBatchOperation(appid, handler, args, mi);
 					break;
 				case PUT_ALL:
-					addToCacheBatchOperation(appid, args);
+					addToCacheBatchOperation(appid, args, handler.update);
 					break;
 				case DELETE_ALL:
 					removeFromCacheBatchOperation(appid, args);
@@ -207,14 +251,14 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object addToIndexOperation(String appid, Method daoMethod, Object[] args, MethodInvocation mi) throws Throwable {
+	private Object addToIndexOperation(String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi) throws Throwable {
 		ParaObject addMe = AOPUtils.getArgOfParaObject(args);
 		String[] errors = ValidationUtils.validateObject(addMe);
 		Object result = null;
 		if (addMe != null && errors.length == 0) {
 			AOPUtils.checkAndFixType(addMe);
 			if (addMe.getStored()) {
-				result = invokeDAO(appid, daoMethod, mi);
+				result = invokeDAO(appid, handler, mi);
 				if (addMe.getVersion() == -1) {
 					logger.warn("DAO operation failed for object '{}' due to version mismatch. "
 							+ "Indexing and caching will be skipped.", addMe.getId());
@@ -233,8 +277,8 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object removeFromIndexOperation(String appid, Method daoMethod, Object[] args, MethodInvocation mi) throws Throwable {
-		Object result = invokeDAO(appid, daoMethod, mi); // delete from DB even if "isStored = false"
+	private Object removeFromIndexOperation(String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi) throws Throwable {
+		Object result = invokeDAO(appid, handler, mi); // delete from DB even if "isStored = false"
 		ParaObject removeMe = AOPUtils.getArgOfParaObject(args);
 		AOPUtils.checkAndFixType(removeMe);
 		try (Metrics.Context context = Metrics.time(appid, search.getClass(), "unindex")) {
@@ -245,16 +289,16 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object addToIndexBatchOperation(String appid, Method daoMethod, Object[] args, MethodInvocation mi)
+	private Object addToIndexBatchOperation(String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi)
 			throws Throwable {
 		List<ParaObject> addUs = AOPUtils.getArgOfListOfType(args, ParaObject.class);
 		List<ParaObject> indexUs = new LinkedList<>();
 		List<ParaObject> removedObjects = AOPUtils.removeNotStoredNotIndexed(addUs, indexUs);
-		Object result = invokeDAO(appid, daoMethod, mi);
+		Object result = invokeDAO(appid, handler, mi);
 		List<ParaObject> indexUsFiltered = indexUs.stream().filter(p -> p.getVersion() >= 0).collect(Collectors.toList());
-		if (!indexUs.isEmpty() && indexUsFiltered.isEmpty()) {
-			logger.warn("DAO batch operation failed for {} objects due to version mismatch or rollback. "
-					+ "Indexing and caching for these objects will be skipped.", indexUs.size());
+		if (indexUsFiltered.size() < indexUs.size()) {
+			logger.warn("DAO batch operation failed for {} objects due to version mismatch, rollback or write error. "
+					+ "Indexing and caching for these objects will be skipped.", indexUs.size() - indexUsFiltered.size());
 		}
 		try (Metrics.Context context = Metrics.time(appid, search.getClass(), "indexAll")) {
 			search.indexAll(appid, indexUsFiltered);
@@ -268,9 +312,13 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object removeFromIndexBatchOperation(String appid, Method daoMethod, Object[] args, MethodInvocation mi) throws Throwable {
+	private Object removeFromIndexBatchOperation(String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi) throws Throwable {
 		List<ParaObject> removeUs = AOPUtils.getArgOfListOfType(args, ParaObject.class);
-		Object result = invokeDAO(appid, daoMethod, mi); // delete from DB even if "isStored = false"
+		Object result = invokeDAO(appid, handler, mi); // delete from DB even if "isStored = false"
+		if (removeUs != null) {
+			// objects which couldn't be deleted from the DB are marked with version -1 and stay in the index
+			removeUs = removeUs.stream().filter(p -> p == null || p.getVersion() != -1).collect(Collectors.toList());
+		}
 		try (Metrics.Context context = Metrics.time(appid, search.getClass(), "unindexAll")) {
 			search.unindexAll(appid, removeUs); // remove from index even if "isIndexed = false"
 		}
@@ -279,7 +327,7 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		return result;
 	}
 
-	private Object readFromCacheOperation(String appid, Method daoMethod, Object[] args, MethodInvocation mi) throws Throwable {
+	private Object readFromCacheOperation(String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi) throws Throwable {
 		Object result = null;
 		String getMeId = (args != null && args.length > 1) ? (String) args[1] : null;
 		try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "get")) {
@@ -288,23 +336,62 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		if (result != null) {
 			logger.debug("{}: Cache hit: {}->{}", getClass().getSimpleName(), appid, getMeId);
 		} else if (getMeId != null) {
-			result = invokeDAO(appid, daoMethod, mi);
+			result = loadOnCacheMiss(appid, getMeId, handler, mi);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads an object from the DB after a cache miss and caches it. Concurrent misses for the same object
+	 * wait for the first one to finish loading it, instead of all hitting the DB at once.
+	 * @param appid appid
+	 * @param getMeId the object id
+	 * @param handler the method handler
+	 * @param mi method invocation
+	 * @return the object or null
+	 * @throws Throwable error
+	 */
+	private Object loadOnCacheMiss(String appid, String getMeId, DAOMethodHandler handler, MethodInvocation mi)
+			throws Throwable {
+		String key = appid + "/" + getMeId;
+		CompletableFuture<Object> load = new CompletableFuture<>();
+		CompletableFuture<Object> inFlight = loadsInFlight.putIfAbsent(key, load);
+		if (inFlight != null) {
+			logger.debug("{}: Cache miss, waiting for load in progress: {}->{}", getClass().getSimpleName(),
+					appid, getMeId);
+			try {
+				return inFlight.join();
+			} catch (CompletionException e) {
+				throw (e.getCause() != null) ? e.getCause() : e;
+			}
+		}
+		try {
+			Object result = invokeDAO(appid, handler, mi);
 			if (result != null && ((ParaObject) result).getCached()) {
 				try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "put")) {
 					cache.put(appid, getMeId, result);
 				}
 				logger.debug("{}: Cache miss: {}->{}", getClass().getSimpleName(), appid, getMeId);
 			}
+			load.complete(result);
+			return result;
+		} catch (Throwable t) {
+			load.completeExceptionally(t);
+			throw t;
+		} finally {
+			loadsInFlight.remove(key, load);
 		}
-		return result;
 	}
 
-	private void addToCacheOperation(String appid, Object[] args) {
+	private void addToCacheOperation(String appid, Object[] args, boolean update) {
 		ParaObject putMe = AOPUtils.getArgOfParaObject(args);
 		if (putMe != null && putMe.getCached() && putMe.getVersion() >= 0) {
 			try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "put")) {
 				cache.put(appid, putMe.getId(), putMe);
 			}
+			if (update) {
+				publishInvalidation(appid, Collections.singletonList(putMe.getId()));
+			}
 			logger.debug("{}: Cache put: {}->{}", getClass().getSimpleName(), appid, putMe.getId());
 		}
 	}
@@ -319,42 +406,94 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 		}
 	}
 
-	private Object readFromCacheBatchOperation(String appid, Method daoMethod, Object[] args, MethodInvocation mi) throws Throwable {
+	private Object readFromCacheBatchOperation(String appid, DAOMethodHandler handler, Object[] args, MethodInvocation mi) throws Throwable {
 		Object result = Collections.emptyMap();
-		List<String> getUs = AOPUtils.getArgOfListOfType(args, String.class);
-		if (getUs != null) {
+		// the keys come before the list of fields in a projected read
+		List<String> getUs = handler.projected ? (List<String>) args[1] : AOPUtils.getArgOfListOfType(args, String.class);
+		if (getUs != null && !getUs.isEmpty()) {
 			Map<String, ParaObject> cached;
 			try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "getAll")) {
 				cached = cache.getAll(appid, getUs);
 			}
 			logger.debug("{}: Cache getAll(): {}->{}", getClass().getSimpleName(), appid, getUs);
-			// hit the database if even a single object is missing from cache, then cache it
-			if (cached.size() < getUs.size()) {
-				logger.debug("{}: Cache getAll() will read from DB: {}", getClass().getSimpleName(), appid);
-				result = invokeDAO(appid, daoMethod, mi);
-				if (result != null) {
+			Set<String> missing = new LinkedHashSet<>(getUs);
+			missing.removeAll(cached.keySet());
+			result = cached;
+			// hit the database only for the objects missing from cache, then cache them
+			if (!missing.isEmpty()) {
+				logger.debug("{}: Cache getAll() will read {} objects from DB: {}",
+						getClass().getSimpleName(), missing.size(), appid);
+				Map<String, ParaObject> fromDB = invokeDAOWithKeys(appid, handler, args, getUs,
+						new ArrayList<>(missing), mi);
+				if (fromDB != null && !fromDB.isEmpty()) {
+					// objects with only some of their fields must not be cached
+					if (!handler.projected || args[2] == null || ((List<?>) args[2]).isEmpty()) {
+						putAllInCache(appid, fromDB);
+					}
+					// merge hits and misses in the requested order
+					Map<String, ParaObject> merged = new LinkedHashMap<>(getUs.size());
 					for (String id : getUs) {
-						logger.debug("{}: Cache getAll() got from DB: {}", getClass().getSimpleName(), id);
-						if (!cached.containsKey(id)) {
-							ParaObject obj = ((Map<String, ParaObject>) result).get(id);
-							if (obj != null && obj.getCached()) {
-								try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "put")) {
-									cache.put(appid, obj.getId(), obj);
-								}
-								logger.debug("{}: Cache miss on readAll: {}->{}", getClass().getSimpleName(), appid, id);
-							}
+						if (cached.containsKey(id)) {
+							merged.put(id, cached.get(id));
+						} else if (fromDB.containsKey(id)) {
+							merged.put(id, fromDB.get(id));
 						}
 					}
+					result = merged;
 				}
 			}
-			if (result == null || ((Map) result).isEmpty()) {
-				result = cached;
-			}
 		}
 		return result;
 	}
 
-	private void addToCacheBatchOperation(String appid, Object[] args) {
+	private void putAllInCache(String appid, Map<String, ParaObject> fromDB) {
+		Map<String, ParaObject> putUs = new LinkedHashMap<>(fromDB.size());
+		for (ParaObject obj : fromDB.values()) {
+			if (obj != null && obj.getCached()) {
+				putUs.put(obj.getId(), obj);
+			}
+		}
+		if (!putUs.isEmpty()) {
+			try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "putAll")) {
+				cache.putAll(appid, putUs);
+			}
+			logger.debug("{}: Cache miss on readAll: {}->{}", getClass().getSimpleName(), appid, putUs.keySet());
+		}
+	}
+
+	/**
+	 * Invokes the DAO with a different list of keys, by swapping it in the arguments of the invocation.
+	 * The original keys are restored afterwards.
+	 * @param appid appid
+	 * @param handler the method handler
+	 * @param args the invocation arguments
+	 * @param keys the original list of keys
+	 * @param newKeys the keys to read instead
+	 * @param mi method invocation
+	 * @return the result of the DAO call
+	 * @throws Throwable error
+	 */
+	private Map<String, ParaObject> invokeDAOWithKeys(String appid, DAOMethodHandler handler, Object[] args,
+			List<String> keys, List<String> newKeys, MethodInvocation mi) throws Throwable {
+		int index = -1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] == keys) {
+				index = i;
+				break;
+			}
+		}
+		if (index < 0) {
+			return (Map<String, ParaObject>) invokeDAO(appid, handler, mi);
+		}
+		args[index] = newKeys;
+		try {
+			return (Map<String, ParaObject>) invokeDAO(appid, handler, mi);
+		} finally {
+			args[index] = keys;
+		}
+	}
+
+	private void addToCacheBatchOperation(String appid, Object[] args, boolean update) {
 		List<ParaObject> putUs = AOPUtils.getArgOfListOfType(args, ParaObject.class);
 		if (putUs != null && !putUs.isEmpty()) {
 			Map<String, ParaObject> map1 = new LinkedHashMap<>(putUs.size());
@@ -367,11 +506,26 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 				try (Metrics.Context context = Metrics.time(appid, cache.getClass(), "putAll")) {
 					cache.putAll(appid, map1);
 				}
+				if (update) {
+					publishInvalidation(appid, new ArrayList<>(map1.keySet()));
+				}
 			}
 			logger.debug("{}: Cache put page: {}->{}", getClass().getSimpleName(), appid, map1.keySet());
 		}
 	}
 
+	/**
+	 * Tells the other nodes to drop their local copies of updated objects. Only a {@link TieredCache} keeps
+	 * such copies - read-through fills and creates never need this.
+	 * @param appid appid
+	 * @param ids the ids of the updated objects
+	 */
+	private void publishInvalidation(String appid, List<String> ids) {
+		if (cache instanceof TieredCache) {
+			((TieredCache) cache).publishInvalidation(appid, ids);
+		}
+	}
+
 	private void removeFromCacheBatchOperation(String appid, Object[] args) {
 		List<ParaObject> deleteUs = AOPUtils.getArgOfListOfType(args, ParaObject.class);
 		if (deleteUs != null && !deleteUs.isEmpty()) {
@@ -393,19 +547,48 @@ public class IndexAndCacheAspect implements MethodInterceptor {
 	 * @param daoMethod invoked dao method
 	 */
 	private void detectNestedInvocations(Method daoMethod) {
-		if (!Config.IN_PRODUCTION && !daoMethod.getName().startsWith("read")) {
-			StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-			for (StackTraceElement stackTraceElement : stackTraceElements) {
-				if (daoMethod.getDeclaringClass().getName().equals(stackTraceElement.getClassName()) &&
-						!daoMethod.getName().equals(stackTraceElement.getMethodName())) {
-					throw new RuntimeException(Utils.
-							formatMessage("Method {0}.{1}() was invoked from another method in the same "
-							+ "class - {2}.{3}(). DAO implementations should avoid this as it causes objects to be "
-							+ "indexed and cached twice per request.",
-							daoMethod.getDeclaringClass().getSimpleName(), daoMethod.getName(),
-							stackTraceElement.getClassName(), stackTraceElement.getMethodName()));
-				}
+		StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
+		for (StackTraceElement stackTraceElement : stackTraceElements) {
+			if (daoMethod.getDeclaringClass().getName().equals(stackTraceElement.getClassName()) &&
+					!daoMethod.getName().equals(stackTraceElement.getMethodName())) {
+				throw new RuntimeException(Utils.
+						formatMessage("Method {0}.{1}() was invoked from another method in the same "
+						+ "class - {2}.{3}(). DAO implementations should avoid this as it causes objects to be "
+						+ "indexed and cached twice per request.",
+						daoMethod.getDeclaringClass().getSimpleName(), daoMethod.getName(),
+						stackTraceElement.getClassName(), stackTraceElement.getMethodName()));
 			}
 		}
 	}
+
+	/**
+	 * Everything the interceptor needs to know about an intercepted method, resolved once.
+	 */
+	private static final class DAOMethodHandler {
+
+		private final Method superMethod;
+		private final Indexed indexedAnno;
+		private final Cached cachedAnno;
+		private final Class<?> daoClass;
+		private final String[] timerNames;
+		private final boolean detectNested;
+		private final boolean update;
+		private final boolean projected;
+
+		DAOMethodHandler(Method superMethod, Method daoMethod) {
+			this.superMethod = superMethod;
+			this.indexedAnno = (superMethod == null) ? null : superMethod.getAnnotation(Indexed.class);
+			this.cachedAnno = (superMethod == null) ? null : superMethod.getAnnotation(Cached.class);
+			this.daoClass = (daoMethod == null) ? null : daoMethod.getDeclaringClass();
+			this.timerNames = (daoMethod == null) ? null : new String[] {daoMethod.getName()};
+			this.detectNested = daoMethod != null && !daoMethod.getName().startsWith("read");
+			this.update = superMethod != null && superMethod.getName().startsWith("update");
+			this.projected = superMethod != null && superMethod.getParameterCount() == 3 &&
+					List.class.equals(superMethod.getParameterTypes()[2]);
+		}
+
+		DAOMethodHandler forMethod(Method daoMethod) {
+			return new DAOMethodHandler(superMethod, daoMethod);
+		}
+	}
 }
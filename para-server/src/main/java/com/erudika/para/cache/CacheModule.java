@@ -20,6 +20,7 @@ package com.erudika.para.cache;
 import com.erudika.para.Para;
 import com.erudika.para.utils.Config;
 import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
 import java.util.ServiceLoader;
 import org.apache.commons.lang3.StringUtils;
 
@@ -35,7 +36,12 @@ public class CacheModule extends AbstractModule {
 			bindToDefault();
 		} else {
 			Cache cachePlugin = loadExternalCache(selectedCache);
-			if (cachePlugin != null) {
+			if (cachePlugin != null && Config.getConfigBoolean("cache.l1_enabled", false)) {
+				// local L1 cache in front of the plugin
+				bind(Cache.class).annotatedWith(Names.named(TieredCache.L2_CACHE)).
+						to(cachePlugin.getClass()).asEagerSingleton();
+				bind(Cache.class).to(TieredCache.class).asEagerSingleton();
+			} else if (cachePlugin != null) {
 				bind(Cache.class).to(cachePlugin.getClass()).asEagerSingleton();
 			} else {
 				// default fallback
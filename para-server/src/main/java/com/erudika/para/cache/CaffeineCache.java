@@ -17,15 +17,34 @@
  */
 package com.erudika.para.cache;
 
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.utils.ParaObjectUtils;
 import com.erudika.para.utils.Config;
-import com.erudika.para.utils.Utils;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -33,7 +52,26 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Default implementation of the {@link Cache} interface using Caffeine.
- * Multitenancy is achieved by caching objects from each app using composite keys: {@code prefix_objectId}.
+ * Multitenancy is achieved by giving each app its own cache namespace - a separate Caffeine cache with its own
+ * size limit, so a busy app can't evict the objects of other apps. Removing all objects for an app
+ * drops its namespace and frees the memory immediately.
+ * <br>
+ * {@code caffeine.cache_size} is the limit for all apps together. It's shared between the apps which have objects
+ * in the cache - every app gets a small part of it and the rest is split by the number of reads of each app. No app
+ * gets more than {@code caffeine.cache_size_per_app}. The shares are updated at most every
+ * {@code caffeine.rebalance_interval_sec}, so the total can be exceeded for a short time after new apps arrive.
+ * Namespaces which haven't been used for {@code caffeine.namespace_idle_minutes} are dropped, returning their
+ * share to the others.
+ * Objects expire after {@code caffeine.evict_after_minutes}, which can be set for each app with
+ * {@code caffeine.app_evict_after_minutes.<appid>}.
+ * <br>
+ * If {@code caffeine.serialize_values} is enabled, values are stored as compact Smile-encoded byte arrays instead of
+ * live object graphs and the cache is limited by {@code caffeine.cache_size_bytes} (and
+ * {@code caffeine.cache_size_bytes_per_app}) instead of a number of objects. Values are decoded on every read,
+ * so callers always get their own copy. Values which can be serialized but not deserialized aren't cached.
+ * <br>
+ * Hit/miss statistics and evictions by cause are recorded for each namespace - see {@link #getStats(String)}.
+ * When a namespace is dropped, its statistics only count towards the totals of all apps.
  * @author Alex Bogdanovski [alex@erudika.com]
  */
 @Singleton
@@ -41,17 +79,135 @@ public class CaffeineCache implements Cache {
 
 	private static final Logger logger = LoggerFactory.getLogger(CaffeineCache.class);
 	private static final int DEFAULT_EXPIRATION_MIN = Config.getConfigInt("caffeine.evict_after_minutes", 10);
-	private final com.github.benmanes.caffeine.cache.Cache<String, Object> cache;
+	/**
+	 * Maximum number of objects cached for all apps. Default is {@code 10000}.
+	 */
+	private static final int CACHE_SIZE = Config.getConfigInt("caffeine.cache_size", 10000);
+	/**
+	 * Maximum number of objects cached per app. Default is {@code caffeine.cache_size}.
+	 */
+	private static final int CACHE_SIZE_PER_APP = Config.getConfigInt("caffeine.cache_size_per_app", CACHE_SIZE);
+	private static final boolean SERIALIZE_VALUES = Config.getConfigBoolean("caffeine.serialize_values", false);
+	private static final long CACHE_SIZE_BYTES = Config.getConfigLong("caffeine.cache_size_bytes", 64L * 1024 * 1024);
+	private static final long CACHE_SIZE_BYTES_PER_APP = Config.getConfigLong("caffeine.cache_size_bytes_per_app",
+			CACHE_SIZE_BYTES);
+	private static final int NAMESPACE_IDLE_MIN = Config.getConfigInt("caffeine.namespace_idle_minutes", 60);
+	private static final int REBALANCE_INTERVAL_SEC = Config.getConfigInt("caffeine.rebalance_interval_sec", 10);
+	private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+	static {
+		SMILE_MAPPER.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+		SMILE_MAPPER.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		SMILE_MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+		SMILE_MAPPER.findAndRegisterModules();
+	}
+
+	private final BiFunction<String, RemovalListener<String, Object>,
+			com.github.benmanes.caffeine.cache.Cache<String, Object>> cacheFactory;
+	private final com.github.benmanes.caffeine.cache.Cache<String,
+			com.github.benmanes.caffeine.cache.Cache<String, Object>> caches;
+	private final ConcurrentHashMap<com.github.benmanes.caffeine.cache.Cache<String, Object>, LongAdder[]> evictions;
+	private final LongAdder[] droppedEvictions;
+	private final AtomicReference<CacheStats> droppedStats;
+	private final ReentrantLock rebalancing;
+	private final ConcurrentHashMap<Class<?>, Boolean> decodableTypes;
+	private final boolean serializeValues;
+	private final long maxTotal;
+	private final long maxPerApp;
+	private final long rebalanceNanos;
+	private volatile long nextRebalance;
 
 	/**
 	 * Default constructor.
 	 */
 	public CaffeineCache() {
-		cache = Caffeine.newBuilder()
-			.maximumSize(Config.getConfigInt("caffeine.cache_size", 10000))
+		this((appid, listener) -> newCache(SERIALIZE_VALUES ?
+				Caffeine.newBuilder().maximumWeight(CACHE_SIZE_BYTES_PER_APP).weigher((k, v) -> weigh(v)) :
+				Caffeine.newBuilder().maximumSize(CACHE_SIZE_PER_APP), expireAfterSeconds(appid), listener),
+				SERIALIZE_VALUES, SERIALIZE_VALUES ? CACHE_SIZE_BYTES : CACHE_SIZE,
+				SERIALIZE_VALUES ? CACHE_SIZE_BYTES_PER_APP : CACHE_SIZE_PER_APP, NAMESPACE_IDLE_MIN,
+				REBALANCE_INTERVAL_SEC);
+	}
+
+	/**
+	 * Creates a cache with a custom size and expiration time.
+	 * @param cacheSize maximum number of objects cached for all apps
+	 * @param expireAfterSeconds default expiration time for cached objects
+	 */
+	public CaffeineCache(long cacheSize, long expireAfterSeconds) {
+		this((appid, listener) -> newCache(Caffeine.newBuilder().maximumSize(cacheSize), expireAfterSeconds, listener),
+				false, cacheSize, cacheSize, NAMESPACE_IDLE_MIN, REBALANCE_INTERVAL_SEC);
+	}
+
+	/**
+	 * @param cacheFactory creates the cache namespace for an app
+	 */
+	CaffeineCache(Function<String, com.github.benmanes.caffeine.cache.Cache<String, Object>> cacheFactory) {
+		this(cacheFactory, false);
+	}
+
+	/**
+	 * @param cacheFactory creates the cache namespace for an app
+	 * @param serializeValues if true, values are cached as byte arrays
+	 */
+	CaffeineCache(Function<String, com.github.benmanes.caffeine.cache.Cache<String, Object>> cacheFactory,
+			boolean serializeValues) {
+		this((appid, listener) -> cacheFactory.apply(appid), serializeValues, 0, 0, NAMESPACE_IDLE_MIN, 0);
+	}
+
+	/**
+	 * @param cacheFactory creates the cache namespace for an app, with a listener for counting evictions
+	 * @param serializeValues if true, values are cached as byte arrays
+	 * @param maxTotal the limit shared by all namespaces, 0 to leave them as created by the factory
+	 * @param maxPerApp the limit of each namespace
+	 * @param idleMinutes time after which an unused namespace is dropped
+	 * @param rebalanceSeconds the minimum time between two updates of the limits of all namespaces
+	 */
+	CaffeineCache(BiFunction<String, RemovalListener<String, Object>,
+			com.github.benmanes.caffeine.cache.Cache<String, Object>> cacheFactory, boolean serializeValues,
+			long maxTotal, long maxPerApp, long idleMinutes, long rebalanceSeconds) {
+		this.cacheFactory = cacheFactory;
+		this.caches = Caffeine.newBuilder()
+				.expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+				.executor(Runnable::run)
+				.scheduler(Scheduler.systemScheduler())
+				.removalListener(this::dropped)
+				.build();
+		this.evictions = new ConcurrentHashMap<>();
+		this.droppedEvictions = newCounters();
+		this.droppedStats = new AtomicReference<>(CacheStats.empty());
+		this.rebalancing = new ReentrantLock();
+		this.decodableTypes = new ConcurrentHashMap<>();
+		this.serializeValues = serializeValues;
+		this.maxTotal = maxTotal;
+		this.maxPerApp = maxPerApp;
+		this.rebalanceNanos = TimeUnit.SECONDS.toNanos(rebalanceSeconds);
+		this.nextRebalance = System.nanoTime();
+	}
+
+	/**
+	 * @param appid an app identifier
+	 * @return the default expiration time for the objects of an app
+	 */
+	static long expireAfterSeconds(String appid) {
+		int minutes = 0;
+		try {
+			minutes = Config.getConfigInt("caffeine.app_evict_after_minutes." + appid, DEFAULT_EXPIRATION_MIN);
+		} catch (RuntimeException e) {
+			logger.debug("Invalid cache expiration setting for app '{}': {}", appid, e.getMessage());
+		}
+		return TimeUnit.MINUTES.toSeconds(minutes > 0 ? minutes : DEFAULT_EXPIRATION_MIN);
+	}
+
+	private static com.github.benmanes.caffeine.cache.Cache<String, Object> newCache(Caffeine<Object, Object> builder,
+			long expireAfterSeconds, RemovalListener<String, Object> listener) {
+		return builder
+			.recordStats()
+			.removalListener(listener)
+			.scheduler(Scheduler.systemScheduler())
 			.expireAfter(new Expiry<String, Object>() {
 				public long expireAfterCreate(String key, Object value, long currentTime) {
-					return TimeUnit.MINUTES.toNanos(DEFAULT_EXPIRATION_MIN);
+					return TimeUnit.SECONDS.toNanos(expireAfterSeconds);
 				}
 				public long expireAfterUpdate(String key, Object value, long currentTime, long currentDuration) {
 					return currentDuration;
@@ -63,13 +219,6 @@ public class CaffeineCache implements Cache {
 			.build();
 	}
 
-	/**
-	 * @param cache cache
-	 */
-	CaffeineCache(com.github.benmanes.caffeine.cache.Cache<String, Object> cache) {
-		this.cache = cache;
-	}
-
 	@Override
 	public boolean contains(String appid, String id) {
 		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
@@ -83,8 +232,11 @@ public class CaffeineCache implements Cache {
 	@Override
 	public <T> void put(String appid, String id, T object) {
 		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
-			cache.put(key(appid, id), object);
-			logger.debug("Cache.put() {} {}", appid, id);
+			Object value = encode(object);
+			if (value != null) {
+				cache(appid).put(id, value);
+				logger.debug("Cache.put() {} {}", appid, id);
+			}
 		}
 	}
 
@@ -94,10 +246,10 @@ public class CaffeineCache implements Cache {
 			put(appid, id, object);
 			return;
 		}
-		if (!StringUtils.isBlank(id) && object != null && !StringUtils.isBlank(appid)) {
-			String key = key(appid, id);
-			cache.policy().expireVariably().ifPresent((t) -> {
-				t.put(key, object, ttlSeconds, TimeUnit.SECONDS);
+		Object value = (object == null) ? null : encode(object);
+		if (!StringUtils.isBlank(id) && value != null && !StringUtils.isBlank(appid)) {
+			cache(appid).policy().expireVariably().ifPresent((t) -> {
+				t.put(id, value, ttlSeconds, TimeUnit.SECONDS);
 			});
 			logger.debug("Cache.put() {} {} ttl {}", appid, id, ttlSeconds);
 		}
@@ -106,13 +258,14 @@ public class CaffeineCache implements Cache {
 	@Override
 	public <T> void putAll(String appid, Map<String, T> objects) {
 		if (objects != null && !objects.isEmpty() && !StringUtils.isBlank(appid)) {
-			Map<String, T> cleanMap = new LinkedHashMap<>(objects.size());
+			Map<String, Object> cleanMap = new LinkedHashMap<>(objects.size());
 			for (Map.Entry<String, T> entry : objects.entrySet()) {
-				if (!StringUtils.isBlank(entry.getKey()) && entry.getValue() != null) {
-					cleanMap.put(key(appid, entry.getKey()), entry.getValue());
+				Object value = (entry.getValue() == null) ? null : encode(entry.getValue());
+				if (!StringUtils.isBlank(entry.getKey()) && value != null) {
+					cleanMap.put(entry.getKey(), value);
 				}
 			}
-			cache.putAll(cleanMap);
+			cache(appid).putAll(cleanMap);
 			logger.debug("Cache.putAll() {} {}", appid, objects.size());
 		}
 	}
@@ -123,9 +276,9 @@ public class CaffeineCache implements Cache {
 		if (StringUtils.isBlank(id) || StringUtils.isBlank(appid)) {
 			return null;
 		}
-		String key = key(appid, id);
 		logger.debug("Cache.get() {} {}", appid, id);
-		return (T) cache.getIfPresent(key);
+		com.github.benmanes.caffeine.cache.Cache<String, Object> cache = caches.getIfPresent(appid);
+		return (cache == null) ? null : (T) decode(cache.getIfPresent(id));
 	}
 
 	@Override
@@ -135,11 +288,15 @@ public class CaffeineCache implements Cache {
 			return Collections.emptyMap();
 		}
 		Map<String, T> map1 = new LinkedHashMap<>(ids.size());
-		ids.remove(null);
-		for (String id : ids) {
-			T t = get(appid, id);
-			if (t != null) {
-				map1.put(id, t);
+		com.github.benmanes.caffeine.cache.Cache<String, Object> cache = caches.getIfPresent(appid);
+		if (cache != null) {
+			List<String> keys = nonBlankIds(ids);
+			Map<String, Object> present = cache.getAllPresent(keys);
+			for (String id : keys) {
+				T t = (T) decode(present.get(id));
+				if (t != null) {
+					map1.put(id, t);
+				}
 			}
 		}
 		logger.debug("Cache.getAll() {} {}", appid, ids.size());
@@ -150,7 +307,10 @@ public class CaffeineCache implements Cache {
 	public void remove(String appid, String id) {
 		if (!StringUtils.isBlank(id) && !StringUtils.isBlank(appid)) {
 			logger.debug("Cache.remove() {} {}", appid, id);
-			cache.invalidate(key(appid, id));
+			com.github.benmanes.caffeine.cache.Cache<String, Object> cache = caches.getIfPresent(appid);
+			if (cache != null) {
+				cache.invalidate(id);
+			}
 		}
 	}
 
@@ -158,24 +318,258 @@ public class CaffeineCache implements Cache {
 	public void removeAll(String appid) {
 		if (!StringUtils.isBlank(appid)) {
 			logger.debug("Cache.removeAll() {}", appid);
-			cache.asMap().remove("key_prefix_" + appid);
+			// the namespace is cleared by the removal listener
+			caches.invalidate(appid);
 		}
 	}
 
 	@Override
 	public void removeAll(String appid, List<String> ids) {
 		if (ids != null && !StringUtils.isBlank(appid)) {
-			for (String id : ids) {
-				if (!StringUtils.isBlank(id)) {
-					remove(appid, id);
-				}
+			com.github.benmanes.caffeine.cache.Cache<String, Object> cache = caches.getIfPresent(appid);
+			if (cache != null) {
+				cache.invalidateAll(nonBlankIds(ids));
 			}
 			logger.debug("Cache.removeAll() {} {}", appid, ids.size());
 		}
 	}
 
-	private String key(String appid, String id) {
-		return cache.asMap().computeIfAbsent("key_prefix_" + appid, k -> Utils.getNewId()) + "_" + id;
+	/**
+	 * Returns the hit, miss and eviction statistics for an app. Statistics are only recorded by caches created
+	 * with the public constructors.
+	 * @param appid the app identifier or null for the totals of all apps, including dropped namespaces
+	 * @return the statistics so far
+	 */
+	public CacheStats getStats(String appid) {
+		CacheStats stats = (appid == null) ? droppedStats.get() : CacheStats.empty();
+		for (Map.Entry<String, com.github.benmanes.caffeine.cache.Cache<String, Object>> e : namespaces(appid)) {
+			stats = stats.plus(e.getValue().stats());
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns the approximate number of objects cached for an app.
+	 * @param appid the app identifier or null for the total of all apps
+	 * @return number of objects
+	 */
+	public long getEstimatedSize(String appid) {
+		long size = 0;
+		for (Map.Entry<String, com.github.benmanes.caffeine.cache.Cache<String, Object>> e : namespaces(appid)) {
+			size += e.getValue().estimatedSize();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the approximate weight of all objects cached for an app. The weight is the number of bytes
+	 * if values are serialized, otherwise it's the same as the number of objects.
+	 * @param appid the app identifier or null for the total of all apps
+	 * @return the total weight
+	 */
+	public long getWeightedSize(String appid) {
+		long weight = 0;
+		for (Map.Entry<String, com.github.benmanes.caffeine.cache.Cache<String, Object>> e : namespaces(appid)) {
+			com.github.benmanes.caffeine.cache.Cache<String, Object> cache = e.getValue();
+			// caches bounded by the number of objects have no weights
+			OptionalLong weighted = cache.policy().eviction().map(ev -> ev.weightedSize()).orElse(OptionalLong.empty());
+			weight += weighted.orElse(cache.estimatedSize());
+		}
+		return weight;
+	}
+
+	/**
+	 * Returns the number of objects evicted from the cache of an app for a specific reason.
+	 * @param appid the app identifier or null for the total of all apps, including dropped namespaces
+	 * @param cause {@link RemovalCause#SIZE}, {@link RemovalCause#EXPIRED} or {@link RemovalCause#COLLECTED}
+	 * @return number of evictions
+	 */
+	public long getEvictionCount(String appid, RemovalCause cause) {
+		long count = (appid == null) ? droppedEvictions[cause.ordinal()].sum() : 0;
+		for (Map.Entry<String, com.github.benmanes.caffeine.cache.Cache<String, Object>> e : namespaces(appid)) {
+			LongAdder[] counters = evictions.get(e.getValue());
+			if (counters != null) {
+				count += counters[cause.ordinal()].sum();
+			}
+		}
+		return count;
+	}
+
+	private Iterable<Map.Entry<String, com.github.benmanes.caffeine.cache.Cache<String, Object>>> namespaces(String appid) {
+		if (appid == null) {
+			return caches.asMap().entrySet();
+		}
+		com.github.benmanes.caffeine.cache.Cache<String, Object> cache = caches.getIfPresent(appid);
+		return (cache == null) ? Collections.emptyList() : Collections.singletonMap(appid, cache).entrySet();
+	}
+
+	private static LongAdder[] newCounters() {
+		LongAdder[] adders = new LongAdder[RemovalCause.values().length];
+		for (int i = 0; i < adders.length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * Creates the cache namespace for an app. Its first limit is an equal share of the total, the
+	 * next rebalancing adjusts it.
+	 */
+	private com.github.benmanes.caffeine.cache.Cache<String, Object> newNamespace(String appid) {
+		LongAdder[] counters = newCounters();
+		com.github.benmanes.caffeine.cache.Cache<String, Object> cache = cacheFactory.apply(appid,
+				(key, value, cause) -> {
+					if (cause.wasEvicted()) {
+						counters[cause.ordinal()].increment();
+					}
+				});
+		evictions.put(cache, counters);
+		if (maxTotal > 0) {
+			long share = Math.max(1, Math.min(maxPerApp, maxTotal / (caches.estimatedSize() + 1)));
+			cache.policy().eviction().ifPresent(ev -> ev.setMaximum(share));
+		}
+		return cache;
+	}
+
+	/**
+	 * Serializes a value if {@code serializeValues} is enabled. The first value of each type other than
+	 * {@link ParaObject} is also read back, and types which can't be read back are never cached.
+	 * @return the value to cache or null if it must not be cached
+	 */
+	private Object encode(Object value) {
+		if (!serializeValues || value == null || value instanceof String) {
+			return value;
+		}
+		try {
+			if (value instanceof ParaObject) {
+				// same fields as in the DB, @JsonIgnore'd ones included
+				return new SerializedValue(null, SMILE_MAPPER.writeValueAsBytes(ParaObjectUtils.
+						getAnnotatedFields((ParaObject) value, false)));
+			}
+			byte[] bytes = SMILE_MAPPER.writeValueAsBytes(value);
+			return isDecodable(value.getClass(), bytes) ? new SerializedValue(value.getClass(), bytes) : null;
+		} catch (Exception e) {
+			logger.debug("Failed to serialize {}, caching it as an object: {}", value.getClass(), e.getMessage());
+			return value;
+		}
+	}
+
+	private boolean isDecodable(Class<?> type, byte[] bytes) {
+		return decodableTypes.computeIfAbsent(type, t -> {
+			try {
+				SMILE_MAPPER.readValue(bytes, t);
+				return true;
+			} catch (Exception e) {
+				logger.warn("Objects of type {} can't be deserialized and won't be cached: {}", t, e.getMessage());
+				return false;
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object decode(Object value) {
+		if (!(value instanceof SerializedValue)) {
+			return value;
+		}
+		SerializedValue sv = (SerializedValue) value;
+		try {
+			if (sv.type == null) {
+				return ParaObjectUtils.setAnnotatedFields(SMILE_MAPPER.readValue(sv.bytes, Map.class));
+			}
+			return SMILE_MAPPER.readValue(sv.bytes, sv.type);
+		} catch (Exception e) {
+			logger.warn("Failed to deserialize cached {}: {}", sv.type, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * The approximate number of bytes taken by a cached value.
+	 * @param value a value
+	 * @return a weight
+	 */
+	static int weigh(Object value) {
+		if (value instanceof SerializedValue) {
+			return ((SerializedValue) value).bytes.length + 32;
+		} else if (value instanceof String) {
+			return ((String) value).length() * 2 + 40;
+		}
+		return 1024; // not serializable, a rough guess
+	}
+
+	private List<String> nonBlankIds(List<String> ids) {
+		List<String> keys = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			if (!StringUtils.isBlank(id)) {
+				keys.add(id);
+			}
+		}
+		return keys;
+	}
+
+	private com.github.benmanes.caffeine.cache.Cache<String, Object> cache(String appid) {
+		com.github.benmanes.caffeine.cache.Cache<String, Object> cache = caches.getIfPresent(appid);
+		if (cache == null) {
+			cache = caches.get(appid, this::newNamespace);
+		}
+		if (maxTotal > 0 && System.nanoTime() - nextRebalance >= 0) {
+			rebalance();
+		}
+		return cache;
+	}
+
+	/**
+	 * Called when a namespace is removed or has been idle for too long. Its objects are released right away
+	 * and its statistics are added to the totals. Its share of the total size goes to the remaining namespaces
+	 * with the next rebalancing.
+	 */
+	private void dropped(String appid, com.github.benmanes.caffeine.cache.Cache<String, Object> cache,
+			RemovalCause cause) {
+		if (appid != null && cache != null) {
+			cache.invalidateAll();
+			cache.cleanUp();
+			droppedStats.accumulateAndGet(cache.stats(), CacheStats::plus);
+			LongAdder[] counters = evictions.remove(cache);
+			if (counters != null) {
+				for (int i = 0; i < counters.length; i++) {
+					droppedEvictions[i].add(counters[i].sum());
+				}
+			}
+			logger.debug("Dropped the cache namespace of app '{}' ({}).", appid, cause);
+		}
+	}
+
+	/**
+	 * Shares the total size limit between the namespaces, up to the limit per app. Half of it is split equally,
+	 * the other half by the number of reads of each namespace. Only one thread rebalances at a time, the
+	 * others carry on without waiting.
+	 */
+	private void rebalance() {
+		if (!rebalancing.tryLock()) {
+			return;
+		}
+		try {
+			nextRebalance = System.nanoTime() + rebalanceNanos;
+			Collection<com.github.benmanes.caffeine.cache.Cache<String, Object>> namespaces = caches.asMap().values();
+			int count = Math.max(1, namespaces.size());
+			long floor = Math.max(1, maxTotal / (2L * count));
+			long spare = Math.max(0, maxTotal - floor * count);
+			long reads = 0;
+			for (com.github.benmanes.caffeine.cache.Cache<String, Object> namespace : namespaces) {
+				reads += namespace.stats().requestCount();
+			}
+			for (com.github.benmanes.caffeine.cache.Cache<String, Object> namespace : namespaces) {
+				double weight = (reads > 0) ? (double) namespace.stats().requestCount() / reads : 1.0 / count;
+				long share = Math.min(maxPerApp, floor + (long) (spare * weight));
+				namespace.policy().eviction().ifPresent(ev -> {
+					if (ev.getMaximum() != share) {
+						ev.setMaximum(share);
+					}
+				});
+			}
+		} finally {
+			rebalancing.unlock();
+		}
 	}
 
 	////////////////////////////////////////////////////
@@ -220,4 +614,19 @@ public class CaffeineCache implements Cache {
 		removeAll(Config.getRootAppIdentifier(), ids);
 	}
 
+	/**
+	 * A value stored as bytes. The type is null for {@link ParaObject}s, which are
+	 * decoded from their map of fields.
+	 */
+	private static final class SerializedValue {
+
+		private final Class<?> type;
+		private final byte[] bytes;
+
+		SerializedValue(Class<?> type, byte[] bytes) {
+			this.type = type;
+			this.bytes = bytes;
+		}
+	}
+
 }
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.DestroyListener;
+import com.erudika.para.Para;
+import com.erudika.para.core.utils.ParaObjectUtils;
+import com.erudika.para.queue.AWSQueue;
+import com.erudika.para.queue.DiskQueue;
+import com.erudika.para.queue.LocalQueue;
+import com.erudika.para.queue.Queue;
+import com.erudika.para.utils.Config;
+import com.erudika.para.utils.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A two-tier cache - a small, short-lived local {@link CaffeineCache} (L1) in front of another,
+ * usually distributed, {@link Cache} implementation (L2). Reads are served from L1 when possible and
+ * L1 misses are loaded from L2. Writes and removals go to both tiers. Removals, and updates reported through
+ * {@link #publishInvalidation(java.lang.String, java.util.List)}, are published as invalidation messages through
+ * a {@link Queue}, so that other nodes drop their stale L1 copies. Plain puts are not published, because most of
+ * them are read-through fills of objects which haven't changed.
+ * The invalidation queue must deliver each message to every node (publish/subscribe), so the point-to-point
+ * queues ({@link AWSQueue}, {@link LocalQueue}, {@link DiskQueue}) are rejected. Without one,
+ * L1 entries are only kept for {@code cache.l1_ttl_seconds}.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@Singleton
+public class TieredCache implements Cache {
+
+	/**
+	 * The name of the binding for the L2 cache.
+	 */
+	public static final String L2_CACHE = "l2cache";
+
+	private static final Logger logger = LoggerFactory.getLogger(TieredCache.class);
+	private static final int L1_SIZE = Config.getConfigInt("cache.l1_size", 1000);
+	private static final int L1_TTL_SEC = Config.getConfigInt("cache.l1_ttl_seconds", 10);
+	private static final int POLLING_INTERVAL_MS = Config.getConfigInt("cache.invalidation_polling_ms", 500);
+	private static final int MAX_MESSAGES_PER_POLL = 1000;
+
+	private final Cache l1;
+	private final Cache l2;
+	private final Queue invalidations;
+	private final ScheduledExecutorService scheduler;
+	private final String nodeId = Utils.getNewId();
+	private ScheduledFuture<?> pollingTask;
+
+	/**
+	 * Default constructor. The invalidation queue is loaded by name from {@code cache.invalidation_queue}.
+	 * @param l2 the L2 cache
+	 */
+	@Inject
+	public TieredCache(@Named(L2_CACHE) Cache l2) {
+		this(new CaffeineCache(L1_SIZE, L1_TTL_SEC), l2,
+				loadInvalidationQueue(Config.getConfigParam("cache.invalidation_queue", "")));
+	}
+
+	/**
+	 * @param l1 the L1 cache
+	 * @param l2 the L2 cache
+	 * @param invalidations a publish/subscribe queue for broadcasting invalidations (optional)
+	 * @throws IllegalArgumentException if the queue is point-to-point
+	 */
+	public TieredCache(Cache l1, Cache l2, Queue invalidations) {
+		this(l1, l2, invalidations, Para.getScheduledExecutorService());
+	}
+
+	/**
+	 * @param l1 the L1 cache
+	 * @param l2 the L2 cache
+	 * @param invalidations a publish/subscribe queue for broadcasting invalidations (optional)
+	 * @param scheduler polls the invalidation queue
+	 * @throws IllegalArgumentException if the queue is point-to-point
+	 */
+	TieredCache(Cache l1, Cache l2, Queue invalidations, ScheduledExecutorService scheduler) {
+		if (isPointToPoint(invalidations)) {
+			throw new IllegalArgumentException("Cache invalidations can't be broadcast through " +
+					invalidations.getClass().getSimpleName() + " - each message is consumed by only one node.");
+		}
+		this.l1 = l1;
+		this.l2 = l2;
+		this.invalidations = invalidations;
+		this.scheduler = scheduler;
+		if (invalidations != null) {
+			startPolling();
+		} else {
+			logger.warn("No invalidation queue configured for the L1 cache - "
+					+ "other nodes may serve stale objects for up to {}s.", L1_TTL_SEC);
+		}
+	}
+
+	@Override
+	public boolean contains(String appid, String id) {
+		return get(appid, id) != null;
+	}
+
+	@Override
+	public <T> void put(String appid, String id, T object) {
+		l2.put(appid, id, object);
+		l1.put(appid, id, object);
+	}
+
+	@Override
+	public <T> void put(String appid, String id, T object, Long ttlSeconds) {
+		l2.put(appid, id, object, ttlSeconds);
+		if (ttlSeconds == null || ttlSeconds <= 0L || ttlSeconds >= L1_TTL_SEC) {
+			l1.put(appid, id, object);
+		} else {
+			l1.put(appid, id, object, ttlSeconds);
+		}
+	}
+
+	@Override
+	public <T> void putAll(String appid, Map<String, T> objects) {
+		if (objects != null && !objects.isEmpty()) {
+			l2.putAll(appid, objects);
+			l1.putAll(appid, objects);
+		}
+	}
+
+	@Override
+	public <T> T get(String appid, String id) {
+		T t = l1.get(appid, id);
+		if (t == null) {
+			t = l2.get(appid, id);
+			if (t != null) {
+				l1.put(appid, id, t);
+			}
+		}
+		return t;
+	}
+
+	@Override
+	public <T> Map<String, T> getAll(String appid, List<String> ids) {
+		if (ids == null || StringUtils.isBlank(appid)) {
+			return Collections.emptyMap();
+		}
+		Map<String, T> local = l1.getAll(appid, ids);
+		if (local.size() >= ids.size()) {
+			return local;
+		}
+		List<String> missing = new ArrayList<>(ids.size() - local.size());
+		for (String id : ids) {
+			if (id != null && !local.containsKey(id)) {
+				missing.add(id);
+			}
+		}
+		if (missing.isEmpty()) {
+			return local;
+		}
+		Map<String, T> remote = l2.getAll(appid, missing);
+		if (remote.isEmpty()) {
+			return local;
+		}
+		l1.putAll(appid, remote);
+		Map<String, T> map1 = new LinkedHashMap<>(ids.size());
+		for (String id : ids) {
+			T t = local.containsKey(id) ? local.get(id) : remote.get(id);
+			if (t != null) {
+				map1.put(id, t);
+			}
+		}
+		return map1;
+	}
+
+	@Override
+	public void remove(String appid, String id) {
+		l2.remove(appid, id);
+		l1.remove(appid, id);
+		publish(appid, Collections.singletonList(id));
+	}
+
+	@Override
+	public void removeAll(String appid) {
+		l2.removeAll(appid);
+		l1.removeAll(appid);
+		publish(appid, null);
+	}
+
+	@Override
+	public void removeAll(String appid, List<String> ids) {
+		if (ids != null && !ids.isEmpty()) {
+			l2.removeAll(appid, ids);
+			l1.removeAll(appid, ids);
+			publish(appid, ids);
+		}
+	}
+
+	/**
+	 * @return the local cache (L1)
+	 */
+	public Cache getL1Cache() {
+		return l1;
+	}
+
+	/**
+	 * Tells all other nodes to drop their L1 copies of objects which were updated on this node.
+	 * Called after the updated objects have been put in cache.
+	 * @param appid appid
+	 * @param ids the ids of the updated objects
+	 */
+	public void publishInvalidation(String appid, List<String> ids) {
+		if (ids != null && !ids.isEmpty()) {
+			publish(appid, ids);
+		}
+	}
+
+	/**
+	 * Sends an invalidation message to all other nodes.
+	 * @param appid appid
+	 * @param ids the ids of the objects which have changed or null if all objects for that app have to go
+	 */
+	private void publish(String appid, List<String> ids) {
+		if (invalidations == null || StringUtils.isBlank(appid)) {
+			return;
+		}
+		Map<String, Object> msg = new HashMap<>(3);
+		msg.put("node", nodeId);
+		msg.put(Config._APPID, appid);
+		if (ids != null) {
+			msg.put("ids", ids);
+		}
+		try {
+			invalidations.push(ParaObjectUtils.getJsonWriterNoIdent().writeValueAsString(msg));
+		} catch (Exception e) {
+			logger.warn("Failed to publish cache invalidation for {}: {}", appid, e.getMessage());
+		}
+	}
+
+	/**
+	 * Applies the invalidation messages sent by other nodes to the L1 cache.
+	 * @return the number of messages processed
+	 */
+	@SuppressWarnings("unchecked")
+	int processInvalidations() {
+		int count = 0;
+		String msg = invalidations.pull();
+		while (!StringUtils.isBlank(msg) && count < MAX_MESSAGES_PER_POLL) {
+			count++;
+			try {
+				Map<String, Object> parsed = ParaObjectUtils.getJsonReader(Map.class).readValue(msg);
+				String appid = (String) parsed.get(Config._APPID);
+				List<String> ids = (List<String>) parsed.get("ids");
+				if (nodeId.equals(parsed.get("node")) || StringUtils.isBlank(appid)) {
+					logger.debug("Skipped cache invalidation message: {}", msg);
+				} else if (ids == null) {
+					l1.removeAll(appid);
+				} else {
+					l1.removeAll(appid, ids);
+				}
+			} catch (Exception e) {
+				logger.warn("Invalid cache invalidation message: {}", msg);
+			}
+			msg = (count < MAX_MESSAGES_PER_POLL) ? invalidations.pull() : null;
+		}
+		return count;
+	}
+
+	private void startPolling() {
+		pollingTask = scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				processInvalidations();
+			} catch (Exception e) {
+				logger.error("Failed to process cache invalidations: {}", e.getMessage());
+			}
+		}, POLLING_INTERVAL_MS, POLLING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		Para.addDestroyListener(new DestroyListener() {
+			public void onDestroy() {
+				pollingTask.cancel(true);
+			}
+		});
+	}
+
+	private static boolean isPointToPoint(Queue queue) {
+		return queue instanceof AWSQueue || queue instanceof LocalQueue || queue instanceof DiskQueue;
+	}
+
+	/**
+	 * Scans the classpath for Queue implementations, through the
+	 * {@link ServiceLoader} mechanism and returns one.
+	 * @param classSimpleName the name of the class name to look for and load
+	 * @return a Queue instance if found, or null
+	 */
+	static Queue loadInvalidationQueue(String classSimpleName) {
+		if (StringUtils.isBlank(classSimpleName)) {
+			return null;
+		}
+		ServiceLoader<Queue> queueLoader = ServiceLoader.load(Queue.class, Para.getParaClassLoader());
+		for (Queue queue : queueLoader) {
+			if (queue != null && classSimpleName.equalsIgnoreCase(queue.getClass().getSimpleName())) {
+				if (isPointToPoint(queue)) {
+					logger.warn("Cache invalidation queue '{}' is point-to-point and can't broadcast to all nodes - "
+							+ "a publish/subscribe queue is required.", classSimpleName);
+					return null;
+				}
+				queue.setName(Config.getConfigParam("cache.invalidation_queue_name", "para-cache-invalidations"));
+				return queue;
+			}
+		}
+		logger.warn("Cache invalidation queue '{}' not found.", classSimpleName);
+		return null;
+	}
+
+	////////////////////////////////////////////////////
+
+	@Override
+	public boolean contains(String id) {
+		return contains(Config.getRootAppIdentifier(), id);
+	}
+
+	@Override
+	public <T> void put(String id, T object) {
+		put(Config.getRootAppIdentifier(), id, object);
+	}
+
+	@Override
+	public <T> void putAll(Map<String, T> objects) {
+		putAll(Config.getRootAppIdentifier(), objects);
+	}
+
+	@Override
+	public <T> T get(String id) {
+		return get(Config.getRootAppIdentifier(), id);
+	}
+
+	@Override
+	public <T> Map<String, T> getAll(List<String> ids) {
+		return getAll(Config.getRootAppIdentifier(), ids);
+	}
+
+	@Override
+	public void remove(String id) {
+		remove(Config.getRootAppIdentifier(), id);
+	}
+
+	@Override
+	public void removeAll() {
+		removeAll(Config.getRootAppIdentifier());
+	}
+
+	@Override
+	public void removeAll(List<String> ids) {
+		removeAll(Config.getRootAppIdentifier(), ids);
+	}
+
+}
@@ -17,6 +17,7 @@
  */
 package com.erudika.para.metrics;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Slf4jReporter;
@@ -28,6 +29,9 @@ import com.erudika.para.AppSettingAddedListener;
 import com.erudika.para.AppSettingRemovedListener;
 import com.erudika.para.InitializeListener;
 import com.erudika.para.Para;
+import com.erudika.para.cache.Cache;
+import com.erudika.para.cache.CaffeineCache;
+import com.erudika.para.cache.TieredCache;
 import com.erudika.para.core.App;
 import com.erudika.para.rest.CustomResourceHandler;
 import com.erudika.para.rest.RestUtils;
@@ -36,6 +40,7 @@ import com.erudika.para.utils.HealthUtils;
 import com.erudika.para.utils.RegistryUtils;
 import com.erudika.para.utils.Pager;
 import com.erudika.para.utils.Utils;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -279,6 +284,7 @@ public enum MetricsUtils implements InitializeListener, Runnable {
 			registry.timer(MetricRegistry.name(cacheClassName, "putAll"));
 			registry.timer(MetricRegistry.name(cacheClassName, "getAll"));
 			registry.timer(MetricRegistry.name(cacheClassName, "removeAll"));
+			registerCacheGauges(registry, registryName, cacheClassName);
 		}
 
 		// register timers on the REST endpoints
@@ -325,6 +331,40 @@ public enum MetricsUtils implements InitializeListener, Runnable {
 		}
 	}
 
+	/**
+	 * Registers gauges for the hit ratio, evictions and size of the cache of an app or of the whole system.
+	 * Only {@link CaffeineCache} records these, either on its own or as the local tier of a {@link TieredCache}.
+	 * @param registry the registry of an app or the system registry
+	 * @param registryName the name of the registry. Either the system default name or an appid.
+	 * @param cacheClassName prefix for the gauge names
+	 */
+	private static void registerCacheGauges(MetricRegistry registry, String registryName, String cacheClassName) {
+		Cache cache = Para.getCache();
+		if (cache instanceof TieredCache) {
+			cache = ((TieredCache) cache).getL1Cache();
+		}
+		if (!(cache instanceof CaffeineCache)) {
+			return;
+		}
+		CaffeineCache caffeine = (CaffeineCache) cache;
+		String appid = SYSTEM_METRICS_NAME.equals(registryName) ? null : registryName;
+		gauge(registry, MetricRegistry.name(cacheClassName, "hitRatio"), () -> caffeine.getStats(appid).hitRate());
+		gauge(registry, MetricRegistry.name(cacheClassName, "hits"), () -> caffeine.getStats(appid).hitCount());
+		gauge(registry, MetricRegistry.name(cacheClassName, "misses"), () -> caffeine.getStats(appid).missCount());
+		gauge(registry, MetricRegistry.name(cacheClassName, "estimatedSize"), () -> caffeine.getEstimatedSize(appid));
+		gauge(registry, MetricRegistry.name(cacheClassName, "weightedSize"), () -> caffeine.getWeightedSize(appid));
+		for (RemovalCause cause : RemovalCause.values()) {
+			if (cause.wasEvicted()) {
+				gauge(registry, MetricRegistry.name(cacheClassName, "evictions", cause.name().toLowerCase()),
+						() -> caffeine.getEvictionCount(appid, cause));
+			}
+		}
+	}
+
+	private static void gauge(MetricRegistry registry, String name, Gauge<?> gauge) {
+		registry.gauge(name, () -> gauge);
+	}
+
 	/**
 	 * Publish an app's @{link MetricRegistry} to Graphite.
 	 * @param appid the name of the app.
@@ -24,7 +24,7 @@ import com.erudika.para.Para;
 import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
 import static com.erudika.para.persistence.AWSDynamoUtils.batchGet;
-import static com.erudika.para.persistence.AWSDynamoUtils.batchWrite;
+import static com.erudika.para.persistence.AWSDynamoUtils.batchWriteAll;
 import static com.erudika.para.persistence.AWSDynamoUtils.fromRow;
 import static com.erudika.para.persistence.AWSDynamoUtils.getKeyForAppid;
 import static com.erudika.para.persistence.AWSDynamoUtils.getTableNameForAppid;
@@ -36,12 +36,16 @@ import static com.erudika.para.persistence.AWSDynamoUtils.toRow;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Pager;
 import com.erudika.para.utils.Utils;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -52,7 +56,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
@@ -69,7 +78,6 @@ import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 public class AWSDynamoDAO implements DAO {
 
 	private static final Logger logger = LoggerFactory.getLogger(AWSDynamoDAO.class);
-	private static final int MAX_ITEMS_PER_WRITE = 25;
 	private static final int MAX_KEYS_PER_READ = 100;
 
 	/**
@@ -144,11 +152,7 @@ public class AWSDynamoDAO implements DAO {
 		if (so != null && so.getId() != null) {
 			so.setUpdated(Utils.timestamp());
 			boolean updated = updateRow(so.getId(), appid, toRow(so, Locked.class));
-			if (so.getVersion() != null && so.getVersion() > 0) {
-				so.setVersion(updated ? so.getVersion() + 1 : -1);
-			} else {
-				so.setVersion(0L);
-			}
+			setVersionAfterUpdate(so, updated);
 			logger.debug("DAO.update() {}->{}", appid, so.getId());
 		}
 	}
@@ -273,19 +277,8 @@ public class AWSDynamoDAO implements DAO {
 		}
 
 		Map<String, WriteRequest> reqs = new LinkedHashMap<>(objects.size());
-		int batchSteps = 1;
-		if ((objects.size() > MAX_ITEMS_PER_WRITE)) {
-			batchSteps = (objects.size() / MAX_ITEMS_PER_WRITE) +
-					((objects.size() % MAX_ITEMS_PER_WRITE > 0) ? 1 : 0);
-		}
-
-		Iterator<P> it = objects.iterator();
-		String tableName = getTableNameForAppid(appid);
-		int j = 0;
-
-		for (int i = 0; i < batchSteps; i++) {
-			while (it.hasNext() && j < MAX_ITEMS_PER_WRITE) {
-				ParaObject object = it.next();
+		for (P object : objects) {
+			if (object != null) {
 				if (StringUtils.isBlank(object.getId())) {
 					object.setId(Utils.getNewId());
 				}
@@ -297,17 +290,33 @@ public class AWSDynamoDAO implements DAO {
 				Map<String, AttributeValue> row = toRow(object, null);
 				setRowKey(getKeyForAppid(object.getId(), appid), row);
 				reqs.put(object.getId(), WriteRequest.builder().putRequest(b -> b.item(row)).build());
-				j++;
 			}
-			batchWrite(Collections.singletonMap(tableName, reqs.values().stream().collect(Collectors.toList())), 1);
-			reqs.clear();
-			j = 0;
 		}
+		checkFailedWrites(appid, objects, batchWriteAll(appid, reqs));
 		logger.debug("DAO.createAll() {}->{}", appid, objects.size());
 	}
 
 	@Override
 	public <P extends ParaObject> Map<String, P> readAll(String appid, List<String> keys, boolean getAllColumns) {
+		return batchRead(appid, keys, getAllColumns ? null : Arrays.asList(Config._ID, Config._KEY, Config._TYPE));
+	}
+
+	@Override
+	public <P extends ParaObject> Map<String, P> readAll(String appid, List<String> keys, List<String> fields) {
+		if (fields == null || fields.isEmpty()) {
+			return readAll(appid, keys, true);
+		}
+		Set<String> attributes = new LinkedHashSet<>(Arrays.asList(Config._ID, Config._KEY, Config._TYPE,
+				Config._APPID, Config._CREATORID, Config._PARENTID));
+		for (String field : fields) {
+			if (!StringUtils.isBlank(field)) {
+				attributes.add(field.trim());
+			}
+		}
+		return batchRead(appid, keys, new ArrayList<>(attributes));
+	}
+
+	private <P extends ParaObject> Map<String, P> batchRead(String appid, List<String> keys, List<String> attributes) {
 		if (keys == null || keys.isEmpty() || StringUtils.isBlank(appid)) {
 			return new LinkedHashMap<>();
 		}
@@ -330,6 +339,8 @@ public class AWSDynamoDAO implements DAO {
 
 			Iterator<String> it = keySet.iterator();
 			int j = 0;
+			// up to MAX_CONCURRENT_BATCH_READS chunks are read at the same time
+			Deque<CompletableFuture<Map<String, P>>> reads = new ArrayDeque<>(AWSDynamoUtils.MAX_CONCURRENT_BATCH_READS);
 
 			for (int i = 0; i < batchSteps; i++) {
 				while (it.hasNext() && j < MAX_KEYS_PER_READ) {
@@ -339,15 +350,21 @@ public class AWSDynamoDAO implements DAO {
 					j++;
 				}
 
-				KeysAndAttributes.Builder kna = KeysAndAttributes.builder().keys(keyz);
-				if (!getAllColumns) {
-					kna.attributesToGet(Arrays.asList(Config._ID, Config._KEY, Config._TYPE));
+				KeysAndAttributes.Builder kna = KeysAndAttributes.builder().keys(new ArrayList<>(keyz));
+				if (attributes != null) {
+					kna.attributesToGet(attributes);
 				}
 
-				batchGet(Collections.singletonMap(table, kna.build()), results, 1);
+				if (reads.size() >= AWSDynamoUtils.MAX_CONCURRENT_BATCH_READS) {
+					results.putAll(reads.poll().join());
+				}
+				reads.add(batchGet(appid, kna.build()));
 				keyz.clear();
 				j = 0;
 			}
+			while (!reads.isEmpty()) {
+				results.putAll(reads.poll().join());
+			}
 			logger.debug("DAO.readAll({}) {}", keySet, results.size());
 		} catch (Exception e) {
 			logger.error("Failed to readAll({}), table={}: {}", keys, table, e);
@@ -378,25 +395,61 @@ public class AWSDynamoDAO implements DAO {
 		return results;
 	}
 
+	@Override
+	public <P extends ParaObject> Stream<P> readAllStream(String appid, Pager pager) {
+		if (StringUtils.isBlank(appid)) {
+			return Stream.empty();
+		}
+		// pages are read ahead on the scan executor, not on the small shared Para executor, and each page
+		// is read with a parallel segmented scan if "dynamodb.scan_segments" > 1
+		return new PageIterator<P>(p -> readPage(appid, p), pager, AWSDynamoUtils.getScanExecutor()).stream();
+	}
+
 	@Override
 	public <P extends ParaObject> void updateAll(String appid, List<P> objects) {
-		// DynamoDB doesn't have a BatchUpdate API yet so we have to do one of the following:
-		// 1. update items one by one (chosen for simplicity)
-		// 2. readAll() first, then call writeAll() with updated objects (2 ops)
-		if (objects != null) {
-			for (P object : objects) {
-				if (object != null && object.getId() != null) {
-					object.setUpdated(Utils.timestamp());
-					boolean updated = updateRow(object.getId(), appid, toRow(object, Locked.class));
-					if (object.getVersion() != null && object.getVersion() > 0) {
-						object.setVersion(updated ? object.getVersion() + 1 : -1);
-					} else {
-						object.setVersion(0L);
+		// DynamoDB doesn't have a BatchUpdate API yet so we send one UpdateItem request per object,
+		// keeping up to MAX_CONCURRENT_BATCH_WRITES requests in flight at the same time.
+		if (objects == null || objects.isEmpty()) {
+			return;
+		}
+		CompletionService<Boolean> cs = new ExecutorCompletionService<>(AWSDynamoUtils.getBatchExecutor());
+		Map<Future<Boolean>, P> inFlight = new HashMap<>(AWSDynamoUtils.MAX_CONCURRENT_BATCH_WRITES);
+		Iterator<P> it = objects.iterator();
+		Throwable error = null;
+		try {
+			while (it.hasNext() || !inFlight.isEmpty()) {
+				while (inFlight.size() < AWSDynamoUtils.MAX_CONCURRENT_BATCH_WRITES && it.hasNext()) {
+					P object = it.next();
+					if (object != null && object.getId() != null) {
+						object.setUpdated(Utils.timestamp());
+						Map<String, AttributeValue> row = toRow(object, Locked.class);
+						inFlight.put(cs.submit(() -> updateRow(object.getId(), appid, row)), object);
 					}
 				}
+				if (inFlight.isEmpty()) {
+					break;
+				}
+				Future<Boolean> done = cs.take();
+				P object = inFlight.remove(done);
+				boolean updated = false;
+				try {
+					updated = done.get();
+				} catch (ExecutionException e) {
+					error = e.getCause();
+				}
+				setVersionAfterUpdate(object, updated);
 			}
+		} catch (InterruptedException ie) {
+			logger.error("DAO.updateAll() was interrupted - appid={}", appid);
+			Thread.currentThread().interrupt();
+			inFlight.keySet().forEach(f -> f.cancel(true));
+			error = ie;
 		}
-		logger.debug("DAO.updateAll() {}", (objects == null) ? 0 : objects.size());
+		logger.debug("DAO.updateAll() {}", objects.size());
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		}
+		throwIfNecessary(error);
 	}
 
 	@Override
@@ -406,29 +459,13 @@ public class AWSDynamoDAO implements DAO {
 		}
 
 		Map<String, WriteRequest> reqs = new LinkedHashMap<>(objects.size());
-		int batchSteps = 1;
-		if ((objects.size() > MAX_ITEMS_PER_WRITE)) {
-			batchSteps = (objects.size() / MAX_ITEMS_PER_WRITE)
-					+ ((objects.size() % MAX_ITEMS_PER_WRITE > 0) ? 1 : 0);
-		}
-
-		Iterator<P> it = objects.iterator();
-		String tableName = getTableNameForAppid(appid);
-		int j = 0;
-
-		for (int i = 0; i < batchSteps; i++) {
-			while (it.hasNext() && j < MAX_ITEMS_PER_WRITE) {
-				ParaObject object = it.next();
-				if (object != null) {
-					reqs.put(object.getId(), WriteRequest.builder().
-							deleteRequest(b -> b.key(rowKey(object.getId(), appid))).build());
-					j++;
-				}
+		for (P object : objects) {
+			if (object != null && object.getId() != null) {
+				reqs.put(object.getId(), WriteRequest.builder().
+						deleteRequest(b -> b.key(rowKey(object.getId(), appid))).build());
 			}
-			batchWrite(Collections.singletonMap(tableName, reqs.values().stream().collect(Collectors.toList())), 1);
-			reqs.clear();
-			j = 0;
 		}
+		checkFailedWrites(appid, objects, batchWriteAll(appid, reqs));
 		logger.debug("DAO.deleteAll() {}", objects.size());
 	}
 
@@ -436,6 +473,31 @@ public class AWSDynamoDAO implements DAO {
 	//				MISC FUNCTIONS
 	/////////////////////////////////////////////
 
+	private void setVersionAfterUpdate(ParaObject so, boolean updated) {
+		if (so.getVersion() != null && so.getVersion() > 0) {
+			so.setVersion(updated ? so.getVersion() + 1 : -1);
+		} else {
+			so.setVersion(0L);
+		}
+	}
+
+	/**
+	 * Sets the version of the objects which weren't written to -1, like a failed update does,
+	 * so that they are neither indexed, nor cached, nor unindexed.
+	 */
+	private <P extends ParaObject> void checkFailedWrites(String appid, List<P> objects, List<String> failedIds) {
+		if (failedIds != null && !failedIds.isEmpty()) {
+			Set<String> failed = new HashSet<>(failedIds);
+			for (P object : objects) {
+				if (object != null && failed.contains(object.getId())) {
+					object.setVersion(-1L);
+				}
+			}
+			logger.error("Batch write failed for {} objects - appid={}, ids={}", failedIds.size(), appid, failedIds);
+			throwIfNecessary(new IllegalStateException("Failed to write objects " + failedIds));
+		}
+	}
+
 	private void setRowKey(String key, Map<String, AttributeValue> row) {
 		if (row.containsKey(Config._KEY)) {
 			logger.warn("Attribute name conflict:  "
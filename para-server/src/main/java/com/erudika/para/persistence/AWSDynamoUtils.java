@@ -22,15 +22,38 @@ import com.erudika.para.Para;
 import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.utils.ParaObjectUtils;
+import com.erudika.para.metrics.Metrics;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Pager;
 import java.lang.annotation.Annotation;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,6 +103,47 @@ public final class AWSDynamoUtils {
 	 */
 	public static final boolean ENCRYPTION_AT_REST_ENABLED = Config.getConfigBoolean("dynamodb.sse_enabled", false);
 
+	/**
+	 * The maximum number of batch write or update requests which a single bulk operation sends to DynamoDB
+	 * in parallel. Default is {@code 4}.
+	 */
+	public static final int MAX_CONCURRENT_BATCH_WRITES =
+			Math.max(1, Config.getConfigInt("dynamodb.max_concurrent_batch_writes", 4));
+
+	/**
+	 * The maximum number of batch read requests which a single {@code readAll()} call sends to DynamoDB
+	 * in parallel. Default is {@code 4}.
+	 */
+	public static final int MAX_CONCURRENT_BATCH_READS =
+			Math.max(1, Config.getConfigInt("dynamodb.max_concurrent_batch_reads", 4));
+
+	/**
+	 * The number of threads sending batch requests, shared by all bulk operations on this server. Reads and
+	 * writes have a pool of this size each. Default is {@code 32}.
+	 */
+	public static final int BATCH_THREADS = Math.max(1, Config.getConfigInt("dynamodb.batch_threads", 32));
+
+	/**
+	 * The maximum number of times a throttled or unprocessed request is retried. Default is {@code 10}.
+	 */
+	public static final int MAX_RETRIES = Config.getConfigInt("dynamodb.max_retries", 10);
+
+	private static final long RETRY_BASE_DELAY_MS = Config.getConfigInt("dynamodb.retry_base_delay_ms", 50);
+	private static final long RETRY_MAX_DELAY_MS = Config.getConfigInt("dynamodb.retry_max_delay_ms", 10000);
+	private static final long RETRY_DEADLINE_MS = Config.getConfigInt("dynamodb.retry_deadline_sec", 60) * 1000L;
+	/**
+	 * The number of segments to split table scans into. Values greater than 1 enable parallel
+	 * segmented scans in {@code readPage()}. Default is {@code 1}.
+	 */
+	public static final int SCAN_SEGMENTS = Math.max(1, Config.getConfigInt("dynamodb.scan_segments", 1));
+
+	private static final String SEGMENT_CURSOR_PREFIX = "_segments:";
+	private static final String SEGMENT_DONE = "~";
+	private static final int MAX_ITEMS_PER_WRITE = 25;
+	private static ExecutorService batchExecutor;
+	private static ExecutorService readExecutor;
+	private static ExecutorService scanExecutor;
+
 	private AWSDynamoUtils() { }
 
 	/**
@@ -125,6 +189,60 @@ public final class AWSDynamoUtils {
 //			ddb.shutdown();
 //			ddb = null;
 		}
+		if (batchExecutor != null) {
+			batchExecutor.shutdown();
+			batchExecutor = null;
+		}
+		if (readExecutor != null) {
+			readExecutor.shutdown();
+			readExecutor = null;
+		}
+		if (scanExecutor != null) {
+			scanExecutor.shutdown();
+			scanExecutor = null;
+		}
+	}
+
+	/**
+	 * Returns the executor used for sending batch write and update requests in parallel. It is shared by all
+	 * bulk operations - each one keeps at most {@link #MAX_CONCURRENT_BATCH_WRITES} requests in flight.
+	 * @return a thread pool with {@link #BATCH_THREADS} threads
+	 */
+	protected static synchronized ExecutorService getBatchExecutor() {
+		if (batchExecutor == null) {
+			batchExecutor = newBatchPool();
+		}
+		return batchExecutor;
+	}
+
+	/**
+	 * Returns the executor used for sending batch read requests, separate from the one for writes so that
+	 * reads don't wait behind bulk writes.
+	 * @return a thread pool with {@link #BATCH_THREADS} threads
+	 */
+	protected static synchronized ExecutorService getReadExecutor() {
+		if (readExecutor == null) {
+			readExecutor = newBatchPool();
+		}
+		return readExecutor;
+	}
+
+	private static ExecutorService newBatchPool() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(BATCH_THREADS, BATCH_THREADS, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Returns the executor used for parallel scans and for reading pages ahead.
+	 * @return a cached thread pool
+	 */
+	protected static synchronized ExecutorService getScanExecutor() {
+		if (scanExecutor == null) {
+			scanExecutor = Executors.newCachedThreadPool();
+		}
+		return scanExecutor;
 	}
 
 	/**
@@ -399,97 +517,325 @@ public final class AWSDynamoUtils {
 	}
 
 	/**
-	 * Reads multiple items from DynamoDB, in batch.
+	 * Reads multiple items from DynamoDB, in batch, without blocking. Unprocessed keys and throttled requests
+	 * are retried with jittered exponential backoff, scheduled on the Para scheduler, until
+	 * {@code dynamodb.max_retries} is reached or the keys have been retried for {@code dynamodb.retry_deadline_sec}.
+	 * Requests are sent on a pool of their own, so reads don't queue behind bulk writes.
 	 * @param <P> type of object
-	 * @param kna a map of row key->data
-	 * @param results a map of ID->ParaObject
-	 * @param backoff backoff seconds
+	 * @param appid the app identifier (name)
+	 * @param kna the keys to read
+	 * @return a future map of ID->ParaObject, holding the objects which were read even if some keys failed
 	 */
-	protected static <P extends ParaObject> void batchGet(Map<String, KeysAndAttributes> kna, Map<String, P> results,
-			int backoff) {
-		if (kna == null || kna.isEmpty() || results == null) {
-			return;
+	protected static <P extends ParaObject> CompletableFuture<Map<String, P>> batchGet(String appid,
+			KeysAndAttributes kna) {
+		CompletableFuture<Map<String, P>> done = new CompletableFuture<>();
+		if (StringUtils.isBlank(appid) || kna == null) {
+			done.complete(Collections.emptyMap());
+			return done;
 		}
-		try {
-			BatchGetItemResponse result = getClient().batchGetItem(b -> b.
-					returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).requestItems(kna));
-			if (result == null) {
-				return;
-			}
+		String table = getTableNameForAppid(appid);
+		readKeys(appid, table, Collections.singletonMap(table, kna), 0, 0L, new HashMap<>(), done);
+		return done;
+	}
 
-			List<Map<String, AttributeValue>> res = result.responses().get(kna.keySet().iterator().next());
+	private static <P extends ParaObject> void readKeys(String appid, String table,
+			Map<String, KeysAndAttributes> request, int attempt, long deadline, Map<String, P> results,
+			CompletableFuture<Map<String, P>> done) {
+		long delay = (attempt == 0) ? 0 : retryDelay(attempt);
+		scheduleAttempt(getReadExecutor(), () -> getClient().batchGetItem(b -> b.
+				returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).requestItems(request)), delay).
+				whenComplete((result, err) -> {
+					Map<String, KeysAndAttributes> next = request;
+					if (err != null) {
+						if (!(err instanceof ProvisionedThroughputExceededException)) {
+							logger.error("Failed to execute batch read operation on table '{}'", table, err);
+							done.complete(results);
+							return;
+						}
+						logger.warn("Read capacity exceeded for table '{}'. Retry #{}.", table, attempt + 1);
+						Metrics.counter(appid, AWSDynamoUtils.class, "batchGet", "throttled").inc();
+					} else {
+						next = collectResults(appid, table, result, attempt, results);
+					}
+					if (next == null || !next.containsKey(table)) {
+						done.complete(results);
+						return;
+					}
+					// the deadline applies to the retries only, starting with the first one
+					long now = System.currentTimeMillis();
+					long retryDeadline = (deadline > 0) ? deadline : now + RETRY_DEADLINE_MS;
+					if (attempt >= MAX_RETRIES || now >= retryDeadline) {
+						int left = next.get(table).keys().size();
+						logger.error("Gave up on {} read requests for table '{}' after {} retries.", left, table, attempt);
+						Metrics.counter(appid, AWSDynamoUtils.class, "batchGet", "failed").inc(left);
+						done.complete(results);
+						return;
+					}
+					readKeys(appid, table, next, attempt + 1, retryDeadline, results, done);
+				});
+	}
 
-			for (Map<String, AttributeValue> item : res) {
-				P obj = fromRow(item);
-				if (obj != null) {
-					results.put(obj.getId(), obj);
-				}
+	private static <P extends ParaObject> Map<String, KeysAndAttributes> collectResults(String appid, String table,
+			BatchGetItemResponse result, int attempt, Map<String, P> results) {
+		List<Map<String, AttributeValue>> res = result.responses().getOrDefault(table, Collections.emptyList());
+		for (Map<String, AttributeValue> item : res) {
+			P obj = fromRow(item);
+			if (obj != null) {
+				results.put(obj.getId(), obj);
 			}
-			logger.debug("batchGet(): total {}, cc {}", res.size(), result.consumedCapacity());
+		}
+		logger.debug("batchGet(): total {}, cc {}", res.size(), result.consumedCapacity());
+		Map<String, KeysAndAttributes> unprocessed = result.unprocessedKeys();
+		if (unprocessed != null && unprocessed.containsKey(table)) {
+			int left = unprocessed.get(table).keys().size();
+			logger.warn("{} UNPROCESSED read requests! Retry #{}.", left, attempt + 1);
+			Metrics.counter(appid, AWSDynamoUtils.class, "batchGet", "retried").inc(left);
+		}
+		return unprocessed;
+	}
 
-			if (result.unprocessedKeys() != null && !result.unprocessedKeys().isEmpty()) {
-				Thread.sleep((long) backoff * 1000L);
-				logger.warn("{} UNPROCESSED read requests!", result.unprocessedKeys().size());
-				batchGet(result.unprocessedKeys(), results, backoff * 2);
+	/**
+	 * Writes multiple items to a table in parallel. Requests are split into chunks of 25 items and up to
+	 * {@link #MAX_CONCURRENT_BATCH_WRITES} chunks of this call are kept in flight at the same time. Unprocessed
+	 * items returned by DynamoDB are scheduled for a retry with jittered exponential backoff and are then merged
+	 * back into the queue of pending requests, to be sent with later chunks. An item is retried at most
+	 * {@code dynamodb.max_retries} times. The whole call takes at most {@code dynamodb.retry_deadline_sec} - when
+	 * the deadline expires, the items which haven't been written yet, including those still in flight, are
+	 * reported as failed and the call returns without waiting for them.
+	 * @param appid the app identifier (name)
+	 * @param requests a map of object ids to write requests
+	 * @return a list of ids of the objects which could not be written
+	 */
+	protected static List<String> batchWriteAll(String appid, Map<String, WriteRequest> requests) {
+		if (StringUtils.isBlank(appid) || requests == null || requests.isEmpty()) {
+			return new LinkedList<>();
+		}
+		BatchWrite write = new BatchWrite(appid, getTableNameForAppid(appid), requests,
+				System.currentTimeMillis() + RETRY_DEADLINE_MS);
+		try {
+			write.run();
+		} catch (InterruptedException ie) {
+			logger.error("Batch write operation on table '{}' was interrupted.", write.table);
+			Thread.currentThread().interrupt();
+		}
+		List<String> failed = write.getFailed();
+		if (!failed.isEmpty()) {
+			Metrics.counter(appid, AWSDynamoUtils.class, "batchWrite", "failed").inc(failed.size());
+		}
+		return failed;
+	}
+
+	private static List<WriteRequest> writeChunk(String appid, String table, List<WriteRequest> chunk) {
+		try {
+			logger.debug("batchWrite(): requests {}", chunk.size());
+			BatchWriteItemResponse result = getClient().batchWriteItem(b -> b.
+					returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).
+					requestItems(Collections.singletonMap(table, chunk)));
+			if (result == null || result.unprocessedItems() == null || !result.unprocessedItems().containsKey(table)) {
+				return Collections.emptyList();
 			}
+			logger.debug("batchWrite(): success - consumed capacity {}", result.consumedCapacity());
+			return result.unprocessedItems().get(table);
 		} catch (ProvisionedThroughputExceededException ex) {
-			logger.warn("Read capacity exceeded for table '{}'. Retrying request in {} seconds.",
-					kna.keySet().iterator().next(), backoff);
+			logger.warn("Write capacity exceeded for table '{}'.", table);
+			Metrics.counter(appid, AWSDynamoUtils.class, "batchWrite", "throttled").inc();
+			return chunk;
+		}
+	}
+
+	/**
+	 * Runs a DynamoDB request on an executor, optionally after a delay. Delayed requests are
+	 * scheduled on the Para scheduler, so the caller is free to do other work in the meantime.
+	 * @param <T> the response type
+	 * @param executor the executor which sends the request
+	 * @param request the request to execute
+	 * @param delayMs the delay in milliseconds
+	 * @return a future response, completed with the exception thrown by the request, if any
+	 */
+	private static <T> CompletableFuture<T> scheduleAttempt(ExecutorService executor, Supplier<T> request,
+			long delayMs) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Runnable task = () -> {
 			try {
-				Thread.sleep((long) backoff * 1000L);
-				// retry forever
-				batchGet(kna, results, backoff * 2);
-			} catch (InterruptedException ie) {
-				logger.error(null, ie);
-				Thread.currentThread().interrupt();
+				executor.execute(() -> {
+					try {
+						future.complete(request.get());
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				future.completeExceptionally(e);
 			}
-		} catch (Exception e) {
-			logger.error("Failed to execute batch read operation on table '{}'", kna.keySet().iterator().next(), e);
+		};
+		if (delayMs > 0) {
+			try {
+				Para.getScheduledExecutorService().schedule(task, delayMs, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				future.completeExceptionally(e);
+			}
+		} else {
+			task.run();
 		}
+		return future;
 	}
 
 	/**
-	 * Writes multiple items in batch.
-	 * @param items a map of tables->write requests
-	 * @param backoff backoff seconds
+	 * Computes the delay before the next retry, using exponential backoff with "full jitter".
+	 * @param attempt the number of the retry, starting at 1
+	 * @return a random delay between 0 and {@code min(max_delay, base_delay * 2^attempt)} milliseconds
 	 */
-	protected static void batchWrite(Map<String, List<WriteRequest>> items, int backoff) {
-		if (items == null || items.isEmpty()) {
-			return;
+	static long retryDelay(int attempt) {
+		long cap = Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << Math.min(Math.max(attempt, 0), 20));
+		return ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+
+	/**
+	 * The state of one {@link #batchWriteAll(java.lang.String, java.util.Map)} call. Only the calling thread
+	 * touches it - the outcomes of chunks and the retries which are due arrive as events, until the deadline.
+	 */
+	private static final class BatchWrite {
+		private final String appid;
+		private final String table;
+		private final Map<WriteRequest, String> ids;
+		private final Deque<WriteRequest> pending;
+		private final Set<WriteRequest> unresolved;
+		private final Set<WriteRequest> sent = new HashSet<>();
+		private final Map<WriteRequest, Integer> attempts = new HashMap<>();
+		private final BlockingQueue<BatchWriteEvent> events = new LinkedBlockingQueue<>();
+		private final List<String> failed = new LinkedList<>();
+		private final long deadline;
+		private boolean expired;
+		private int inFlight;
+		private int scheduled;
+
+		BatchWrite(String appid, String table, Map<String, WriteRequest> requests, long deadline) {
+			this.appid = appid;
+			this.table = table;
+			this.deadline = deadline;
+			this.ids = new HashMap<>(requests.size());
+			for (Map.Entry<String, WriteRequest> entry : requests.entrySet()) {
+				ids.put(entry.getValue(), entry.getKey());
+			}
+			this.pending = new ArrayDeque<>(requests.values());
+			this.unresolved = new HashSet<>(requests.values());
 		}
-		try {
-			logger.debug("batchWrite(): requests {}, backoff {}", items.values().iterator().next().size(), backoff);
-			BatchWriteItemResponse result = getClient().batchWriteItem(b -> b.
-					returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).requestItems(items));
-			if (result == null) {
+
+		void run() throws InterruptedException {
+			while (!pending.isEmpty() || inFlight > 0 || scheduled > 0) {
+				send();
+				BatchWriteEvent event = events.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				if (event == null) {
+					expired = true;
+					logger.error("Batch write operation on table '{}' timed out with {} requests left.",
+							table, unresolved.size());
+					return;
+				}
+				if (event.retry) {
+					scheduled--;
+					pending.addAll(event.requests);
+				} else {
+					inFlight--;
+					sent.removeAll(event.requests);
+					onChunkDone(event);
+				}
+			}
+		}
+
+		private void send() {
+			while (inFlight < MAX_CONCURRENT_BATCH_WRITES && !pending.isEmpty()) {
+				List<WriteRequest> chunk = new ArrayList<>(MAX_ITEMS_PER_WRITE);
+				while (chunk.size() < MAX_ITEMS_PER_WRITE && !pending.isEmpty()) {
+					chunk.add(pending.poll());
+				}
+				sent.addAll(chunk);
+				scheduleAttempt(getBatchExecutor(), () -> writeChunk(appid, table, chunk), 0).
+						whenComplete((unprocessed, err) -> events.add(new BatchWriteEvent(chunk, unprocessed, err, false)));
+				inFlight++;
+			}
+		}
+
+		private void onChunkDone(BatchWriteEvent event) {
+			if (event.error != null) {
+				logger.error("Failed to execute batch write operation on table '{}'", table, event.error);
+				fail(event.requests);
 				return;
 			}
-			logger.debug("batchWrite(): success - consumed capacity {}", result.consumedCapacity());
+			unresolved.removeAll(event.requests);
+			long now = System.currentTimeMillis();
+			List<WriteRequest> retries = new ArrayList<>(event.unprocessed.size());
+			int attempt = 0;
+			for (WriteRequest req : event.unprocessed) {
+				int n = attempts.merge(req, 1, Integer::sum);
+				if (n > MAX_RETRIES || now >= deadline) {
+					failed.add(ids.get(req));
+				} else {
+					unresolved.add(req);
+					retries.add(req);
+					attempt = Math.max(attempt, n);
+				}
+			}
+			if (!retries.isEmpty()) {
+				long delay = Math.min(retryDelay(attempt), Math.max(0, deadline - now));
+				logger.warn("{} UNPROCESSED write requests! Retry #{} in {}ms.", retries.size(), attempt, delay);
+				Metrics.counter(appid, AWSDynamoUtils.class, "batchWrite", "retried").inc(retries.size());
+				try {
+					Para.getScheduledExecutorService().schedule(() ->
+							events.add(new BatchWriteEvent(retries, null, null, true)), delay, TimeUnit.MILLISECONDS);
+					scheduled++;
+				} catch (RejectedExecutionException e) {
+					fail(retries);
+				}
+			}
+		}
 
-			if (result.unprocessedItems() != null && !result.unprocessedItems().isEmpty()) {
-				Thread.sleep((long) backoff * 1000L);
-				logger.warn("{} UNPROCESSED write requests!", result.unprocessedItems().size());
-				batchWrite(result.unprocessedItems(), backoff * 2);
+		private void fail(List<WriteRequest> requests) {
+			for (WriteRequest req : requests) {
+				failed.add(ids.get(req));
+				unresolved.remove(req);
 			}
-		} catch (ProvisionedThroughputExceededException ex) {
-			logger.warn("Write capacity exceeded for table '{}'. Retrying request in {} seconds.",
-					items.keySet().iterator().next(), backoff);
-			try {
-				Thread.sleep((long) backoff * 1000L);
-				// retry forever
-				batchWrite(items, backoff * 2);
-			} catch (InterruptedException ie) {
-				logger.error(null, ie);
-				Thread.currentThread().interrupt();
+		}
+
+		/**
+		 * @return the ids of the objects which were not written - requests still in flight, after an interruption,
+		 * may or may not have been written and are not reported, unless the deadline has expired
+		 */
+		List<String> getFailed() {
+			List<String> all = new LinkedList<>(failed);
+			for (WriteRequest req : unresolved) {
+				if (expired || !sent.contains(req)) {
+					all.add(ids.get(req));
+				}
 			}
-		} catch (Exception e) {
-			logger.error("Failed to execute batch write operation on table '{}'", items.keySet().iterator().next(), e);
-			throwIfNecessary(e);
+			if (!expired && !sent.isEmpty()) {
+				logger.warn("The outcome of {} write requests to table '{}' is unknown - they are still in flight.",
+						sent.size(), table);
+			}
+			return all;
+		}
+	}
+
+	/**
+	 * The outcome of a chunk of batch write requests, or a list of requests which are ready to be retried.
+	 */
+	private static final class BatchWriteEvent {
+		private final List<WriteRequest> requests;
+		private final List<WriteRequest> unprocessed;
+		private final Throwable error;
+		private final boolean retry;
+
+		BatchWriteEvent(List<WriteRequest> requests, List<WriteRequest> unprocessed, Throwable error, boolean retry) {
+			this.requests = requests;
+			this.unprocessed = unprocessed == null ? Collections.<WriteRequest>emptyList() : unprocessed;
+			this.error = error;
+			this.retry = retry;
 		}
 	}
 
 	/**
-	 * Reads a page from a standard DynamoDB table.
+	 * Reads a page from a standard DynamoDB table. If {@code dynamodb.scan_segments} is greater than 1,
+	 * the page is read with a parallel segmented scan and the last key of the pager becomes a composite
+	 * cursor, holding the position within each segment.
 	 * @param <P> type of object
 	 * @param appid the app identifier (name)
 	 * @param p a {@link Pager}
@@ -497,34 +843,139 @@ public final class AWSDynamoUtils {
 	 */
 	public static <P extends ParaObject> List<P> readPageFromTable(String appid, Pager p) {
 		Pager pager = (p != null) ? p : new Pager();
+		if (isSegmentCursor(pager.getLastKey()) || (SCAN_SEGMENTS > 1 && StringUtils.isBlank(pager.getLastKey()))) {
+			return readPageFromTableSegments(appid, pager);
+		}
+		LinkedList<P> results = new LinkedList<>();
+		String lastKey = scanPage(getTableNameForAppid(appid), pager.getLastKey(), 0, 1, pager.getLimit(), results);
+		if (lastKey != null) {
+			pager.setLastKey(lastKey);
+		} else if (!results.isEmpty()) {
+			// set last key to be equal to the last result - end reached.
+			pager.setLastKey(results.peekLast().getId());
+		}
+		return results;
+	}
+
+	private static <P extends ParaObject> List<P> readPageFromTableSegments(String appid, Pager pager) {
+		String table = getTableNameForAppid(appid);
+		String[] cursor = parseSegmentCursor(pager.getLastKey(), SCAN_SEGMENTS);
+		int limit = Math.max(1, (pager.getLimit() + cursor.length - 1) / cursor.length);
+		List<P> results = new LinkedList<>();
+		// a segment can return no items and still have more to read, so an empty page is
+		// only returned when every segment is finished - callers take it as the end of the table
+		while (results.isEmpty() && Arrays.stream(cursor).anyMatch(Objects::nonNull)) {
+			scanSegments(table, cursor, limit, results);
+		}
+		pager.setLastKey(toSegmentCursor(cursor));
+		return results;
+	}
+
+	/**
+	 * Reads one page from each of the unfinished segments in parallel and moves the cursor forward.
+	 */
+	private static <P extends ParaObject> void scanSegments(String table, String[] cursor, int limit, List<P> results) {
+		int segments = cursor.length;
+		String[] next = new String[segments];
+		List<Future<List<P>>> pages = new ArrayList<>(segments);
+		for (int i = 0; i < segments; i++) {
+			final int segment = i;
+			if (cursor[segment] == null) {
+				pages.add(null); // segment finished
+			} else {
+				pages.add(getScanExecutor().submit(() -> {
+					List<P> page = new LinkedList<>();
+					next[segment] = scanPage(table, cursor[segment], segment, segments, limit, page);
+					return page;
+				}));
+			}
+		}
+		try {
+			for (int i = 0; i < segments; i++) {
+				if (pages.get(i) != null) {
+					results.addAll(pages.get(i).get());
+					cursor[i] = next[i];
+				}
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Segmented scan of table '" + table + "' was interrupted.", ie);
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException("Segmented scan of table '" + table + "' failed.", ee.getCause());
+		}
+	}
+
+	/**
+	 * Reads one page of a table, or of a segment of a table.
+	 * @return the key to continue from or null if the end of the table (segment) was reached
+	 */
+	private static <P extends ParaObject> String scanPage(String table, String startKey, int segment, int segments,
+			int limit, List<P> results) {
 		ScanRequest.Builder scanRequest = ScanRequest.builder().
-				tableName(getTableNameForAppid(appid)).
-				limit(pager.getLimit()).
+				tableName(table).
+				limit(limit).
 				returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
 
-		if (!StringUtils.isBlank(pager.getLastKey())) {
+		if (segments > 1) {
+			scanRequest.segment(segment).totalSegments(segments);
+		}
+		if (!StringUtils.isBlank(startKey)) {
 			scanRequest.exclusiveStartKey(Collections.
-					singletonMap(Config._KEY, AttributeValue.builder().s(pager.getLastKey()).build()));
+					singletonMap(Config._KEY, AttributeValue.builder().s(startKey).build()));
 		}
 
 		ScanResponse result = getClient().scan(scanRequest.build());
-		String lastKey = null;
-		LinkedList<P> results = new LinkedList<>();
 		for (Map<String, AttributeValue> item : result.items()) {
 			P obj = fromRow(item);
 			if (obj != null) {
-				lastKey = item.get(Config._KEY).s();
 				results.add(obj);
 			}
 		}
-
 		if (result.lastEvaluatedKey() != null && !result.lastEvaluatedKey().isEmpty()) {
-			pager.setLastKey(result.lastEvaluatedKey().get(Config._KEY).s());
-		} else if (!results.isEmpty()) {
-			// set last key to be equal to the last result - end reached.
-			pager.setLastKey(lastKey);
+			return result.lastEvaluatedKey().get(Config._KEY).s();
 		}
-		return results;
+		return null;
+	}
+
+	/**
+	 * Checks if a pager key is a composite cursor for a segmented scan.
+	 * @param lastKey the last key of a pager
+	 * @return true if the key holds the positions of multiple scan segments
+	 */
+	static boolean isSegmentCursor(String lastKey) {
+		return StringUtils.startsWith(lastKey, SEGMENT_CURSOR_PREFIX);
+	}
+
+	/**
+	 * Parses a composite cursor. A {@code null} element means the segment is finished,
+	 * an empty one means the segment hasn't been started yet.
+	 */
+	static String[] parseSegmentCursor(String lastKey, int segments) {
+		if (!isSegmentCursor(lastKey)) {
+			String[] cursor = new String[segments];
+			Arrays.fill(cursor, "");
+			return cursor;
+		}
+		String[] parts = StringUtils.splitPreserveAllTokens(lastKey.substring(SEGMENT_CURSOR_PREFIX.length()), ',');
+		String[] cursor = new String[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			if (!SEGMENT_DONE.equals(parts[i])) {
+				cursor[i] = new String(Base64.getUrlDecoder().decode(parts[i]), StandardCharsets.UTF_8);
+			}
+		}
+		return cursor;
+	}
+
+	static String toSegmentCursor(String[] cursor) {
+		StringBuilder sb = new StringBuilder(SEGMENT_CURSOR_PREFIX);
+		for (int i = 0; i < cursor.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(cursor[i] == null ? SEGMENT_DONE : Base64.getUrlEncoder().withoutPadding().
+					encodeToString(cursor[i].getBytes(StandardCharsets.UTF_8)));
+		}
+		return sb.toString();
 	}
 
 	/**
@@ -597,14 +1048,14 @@ public final class AWSDynamoUtils {
 			if (pages == null) {
 				break;
 			}
-			List<WriteRequest> deletePage = new LinkedList<>();
+			Map<String, WriteRequest> deletePage = new LinkedHashMap<>();
 			for (Map<String, AttributeValue> item : pages.items()) {
 				String key = item.get(Config._KEY).s();
 				// only delete rows which belong to the given appid
 				if (StringUtils.startsWith(key, keyPrefix(appid))) {
 					logger.debug("Preparing to delete '{}' from shared table, appid: '{}'.", key, appid);
 					pager.setLastKey(item.get(Config._ID).s());
-					deletePage.add(WriteRequest.builder().deleteRequest(b -> b.
+					deletePage.put(key, WriteRequest.builder().deleteRequest(b -> b.
 							key(Collections.singletonMap(Config._KEY, AttributeValue.builder().s(key).
 									build()))).build());
 				}
@@ -613,7 +1064,11 @@ public final class AWSDynamoUtils {
 			// delete all phase
 			logger.info("Deleting {} items belonging to app '{}', from shared table...", deletePage.size(), appid);
 			if (!deletePage.isEmpty()) {
-				batchWrite(Collections.singletonMap(getTableNameForAppid(appid), deletePage), 1);
+				List<String> failed = batchWriteAll(appid, deletePage);
+				if (!failed.isEmpty()) {
+					logger.error("Failed to delete {} items belonging to app '{}' from shared table: {}",
+							failed.size(), appid, failed);
+				}
 			}
 		} while (lastKey != null && !lastKey.isEmpty());
 	}
@@ -54,6 +54,11 @@ public class AWSQueue implements Queue {
 		AWSQueueUtils.pushMessages(getUrl(), Collections.singletonList(msg));
 	}
 
+	@Override
+	public void push(String msg, int delaySeconds) {
+		AWSQueueUtils.pushMessages(getUrl(), Collections.singletonList(msg), delaySeconds);
+	}
+
 	@Override
 	public String pull() {
 		List<String> msgs = AWSQueueUtils.pullMessages(getUrl(), 1);
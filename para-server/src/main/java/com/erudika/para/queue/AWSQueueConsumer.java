@@ -0,0 +1,242 @@
+/*
+ * Copyright 2013-2020 Erudika. http://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.queue;
+
+import com.erudika.para.Para;
+import com.erudika.para.utils.Config;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+/**
+ * Consumes messages from an SQS queue for a {@link River}. A number of long-poll receive requests are kept
+ * outstanding on the async client at all times, so that the next messages are already buffered while a batch
+ * is being processed. Messages are deleted only after their batch has been processed successfully - messages
+ * from a failed batch become visible again once their visibility timeout expires (at-least-once delivery).
+ * The visibility timeout of messages which are still buffered or being processed is extended periodically,
+ * in batches.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class AWSQueueConsumer {
+
+	private static final Logger logger = LoggerFactory.getLogger(AWSQueueConsumer.class);
+	private static final int MAX_MESSAGES = 10;  //max in bulk
+	private static final int PREFETCH = Config.getConfigInt("queue.sqs_prefetch_requests", 2);
+	private static final int VISIBILITY_SEC = Config.getConfigInt("queue.sqs_visibility_timeout_seconds", 60);
+	private static final long POLL_WAIT_MS = 1000;
+	private static final long RETRY_DELAY_MS = 5000;
+
+	private final String queueURL;
+	private final SqsAsyncClient client;
+	private final ScheduledExecutorService scheduler;
+	private final BlockingQueue<Message> buffer = new LinkedBlockingQueue<>();
+	private final Map<String, Message> received = new ConcurrentHashMap<>();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private volatile boolean running = true;
+	private volatile long retryAt;
+	private ScheduledFuture<?> extendTask;
+
+	/**
+	 * @param queueURL the URL of the SQS queue
+	 */
+	AWSQueueConsumer(String queueURL) {
+		this(queueURL, AWSQueueUtils.getClient(), Para.getScheduledExecutorService());
+	}
+
+	/**
+	 * @param queueURL the URL of the SQS queue
+	 * @param client the SQS client
+	 * @param scheduler runs the periodic extension of the visibility timeout
+	 */
+	AWSQueueConsumer(String queueURL, SqsAsyncClient client, ScheduledExecutorService scheduler) {
+		this.queueURL = queueURL;
+		this.client = client;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Starts receiving messages and extending their visibility timeout.
+	 */
+	void start() {
+		long period = Math.max(1, VISIBILITY_SEC / 2);
+		extendTask = scheduler.scheduleAtFixedRate(() -> {
+			try {
+				extendVisibility();
+			} catch (Exception e) {
+				logger.error("Failed to extend the visibility of messages from {}: {}", queueURL, e.getMessage());
+			}
+		}, period, period, TimeUnit.SECONDS);
+		receive();
+	}
+
+	/**
+	 * Stops receiving messages. Buffered messages which haven't been handed out are made visible again.
+	 */
+	void stop() {
+		running = false;
+		if (extendTask != null) {
+			extendTask.cancel(false);
+		}
+		List<Message> unprocessed = new ArrayList<>(buffer.size());
+		buffer.drainTo(unprocessed);
+		for (Message msg : unprocessed) {
+			received.remove(msg.receiptHandle());
+		}
+		changeVisibility(unprocessed, 0);
+	}
+
+	/**
+	 * Takes the messages which have already been received, waiting a short while if there are none.
+	 * @param maxMessages the maximum number of messages to return
+	 * @return a batch of messages, possibly empty
+	 */
+	List<String> pull(int maxMessages) {
+		Batch batch = new Batch();
+		try {
+			Message first = buffer.poll(POLL_WAIT_MS, TimeUnit.MILLISECONDS);
+			if (first != null) {
+				batch.messages.add(first);
+				buffer.drainTo(batch.messages, maxMessages - 1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		receive();
+		for (Message msg : batch.messages) {
+			batch.add(msg.body());
+		}
+		return batch;
+	}
+
+	/**
+	 * Deletes the messages of a batch if it was processed successfully and stops extending their visibility.
+	 * @param messages a batch returned by {@link #pull(int)}
+	 * @param success true if the batch was processed
+	 */
+	void processed(List<String> messages, boolean success) {
+		if (!(messages instanceof Batch)) {
+			return;
+		}
+		List<Message> batch = ((Batch) messages).messages;
+		for (Message msg : batch) {
+			received.remove(msg.receiptHandle());
+		}
+		if (success) {
+			delete(batch);
+		} else if (!batch.isEmpty()) {
+			logger.warn("{} messages from {} will be delivered again in {}s.", batch.size(), queueURL, VISIBILITY_SEC);
+		}
+	}
+
+	/**
+	 * Sends receive requests until {@code queue.sqs_prefetch_requests} are outstanding.
+	 * Nothing more is requested while the buffer holds enough messages for every outstanding request.
+	 */
+	private void receive() {
+		while (running && System.currentTimeMillis() >= retryAt) {
+			int n = outstanding.get();
+			if (n >= PREFETCH || buffer.size() >= PREFETCH * MAX_MESSAGES || !outstanding.compareAndSet(n, n + 1)) {
+				return;
+			}
+			client.receiveMessage(b -> b.queueUrl(queueURL).
+					maxNumberOfMessages(MAX_MESSAGES).
+					visibilityTimeout(VISIBILITY_SEC).
+					waitTimeSeconds(River.POLLING_INTERVAL)).whenComplete((res, err) -> {
+						outstanding.decrementAndGet();
+						if (err != null) {
+							logger.error("Failed to receive messages from {}: {}", queueURL, err.toString());
+							retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+						} else if (!running) {
+							changeVisibility(res.messages(), 0);
+						} else {
+							for (Message msg : res.messages()) {
+								received.put(msg.receiptHandle(), msg);
+								buffer.add(msg);
+							}
+						}
+						receive();
+					});
+		}
+	}
+
+	private void delete(List<Message> messages) {
+		for (int i = 0; i < messages.size(); i += MAX_MESSAGES) {
+			List<DeleteMessageBatchRequestEntry> del = new ArrayList<>(MAX_MESSAGES);
+			for (Message msg : messages.subList(i, Math.min(i + MAX_MESSAGES, messages.size()))) {
+				del.add(DeleteMessageBatchRequestEntry.builder().
+						id(msg.messageId()).receiptHandle(msg.receiptHandle()).build());
+			}
+			client.deleteMessageBatch(b -> b.queueUrl(queueURL).entries(del)).
+					whenComplete((res, err) -> {
+						if (err != null) {
+							logger.error("Failed to delete messages from {}: {}", queueURL, err.toString());
+						} else if (!res.failed().isEmpty()) {
+							logger.warn("Failed to delete {} messages from {}.", res.failed().size(), queueURL);
+						}
+					});
+		}
+	}
+
+	private void extendVisibility() {
+		if (!received.isEmpty()) {
+			changeVisibility(new ArrayList<>(received.values()), VISIBILITY_SEC);
+		}
+	}
+
+	private void changeVisibility(List<Message> messages, int timeoutSec) {
+		Iterator<Message> iter = messages.iterator();
+		while (iter.hasNext()) {
+			List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(MAX_MESSAGES);
+			while (iter.hasNext() && entries.size() < MAX_MESSAGES) {
+				Message msg = iter.next();
+				entries.add(ChangeMessageVisibilityBatchRequestEntry.builder().id(msg.messageId()).
+						receiptHandle(msg.receiptHandle()).visibilityTimeout(timeoutSec).build());
+			}
+			client.changeMessageVisibilityBatch(b -> b.queueUrl(queueURL).entries(entries)).
+					whenComplete((res, err) -> {
+						if (err != null) {
+							logger.error("Failed to change the visibility of messages from {}: {}", queueURL, err.toString());
+						}
+					});
+		}
+	}
+
+	/**
+	 * The bodies of a batch of messages, along with the messages themselves.
+	 */
+	private static final class Batch extends ArrayList<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient List<Message> messages = new ArrayList<>(MAX_MESSAGES);
+	}
+}
@@ -26,7 +26,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +46,8 @@ public final class AWSQueueUtils {
 
 	private static SqsAsyncClient sqsClient;
 	private static final int MAX_MESSAGES = 10;  //max in bulk
-	private static final Map<String, Future<?>> POLLING_THREADS = new ConcurrentHashMap<String, Future<?>>();
+	private static final int MAX_DELAY_SEC = 900;
+	private static final Map<String, River> POLLING_THREADS = new ConcurrentHashMap<String, River>();
 
 	private static final String LOCAL_ENDPOINT = "http://localhost:9324";
 	private static final Logger logger = LoggerFactory.getLogger(AWSQueueUtils.class);
@@ -160,6 +160,18 @@ public final class AWSQueueUtils {
 	 * @param messages the massage bodies
 	 */
 	protected static void pushMessages(String queueURL, List<String> messages) {
+		pushMessages(queueURL, messages, 0);
+	}
+
+	/**
+	 * Pushes a number of messages in batch to an SQS queue, to be delivered after a delay.
+	 * @param queueURL the URL of the SQS queue
+	 * @param messages the massage bodies
+	 * @param delaySeconds the delivery delay in seconds, up to {@value #MAX_DELAY_SEC}
+	 */
+	protected static void pushMessages(String queueURL, List<String> messages, int delaySeconds) {
+		// null keeps the default delay of the queue
+		Integer delay = (delaySeconds > 0) ? Math.min(MAX_DELAY_SEC, delaySeconds) : null;
 		if (!StringUtils.isBlank(queueURL) && messages != null) {
 			// only allow strings - ie JSON
 			try {
@@ -170,6 +182,7 @@ public final class AWSQueueUtils {
 					if (!StringUtils.isBlank(message)) {
 						msgs.add(SendMessageBatchRequestEntry.builder().
 								messageBody(message).
+								delaySeconds(delay).
 								id(Integer.toString(i)).build());
 					}
 					if (++j >= MAX_MESSAGES || i == messages.size() - 1) {
@@ -189,7 +202,8 @@ public final class AWSQueueUtils {
 	}
 
 	/**
-	 * Pulls a number of messages from an SQS queue.
+	 * Pulls a number of messages from an SQS queue and deletes them right away.
+	 * The river uses {@link AWSQueueConsumer} instead, which deletes messages only after they're processed.
 	 * @param queueURL the URL of the SQS queue
 	 * @param numberOfMessages the number of messages to pull
 	 * @return a list of messages
@@ -242,12 +256,31 @@ public final class AWSQueueUtils {
 	 */
 	protected static void startPollingForMessages(final String queueURL) {
 		if (!StringUtils.isBlank(queueURL) && !POLLING_THREADS.containsKey(queueURL)) {
-			logger.info("Starting SQS river using queue {} (polling interval: {}s)", queueURL, River.POLLING_INTERVAL);
-			POLLING_THREADS.putIfAbsent(queueURL, Para.getExecutorService().submit(new River() {
+			logger.info("Starting SQS river using queue {} (polling interval: {}s, workers: {})", queueURL,
+					River.POLLING_INTERVAL, River.WORKERS);
+			AWSQueueConsumer consumer = new AWSQueueConsumer(queueURL);
+			River river = new River() {
 				List<String> pullMessages() {
-					return AWSQueueUtils.pullMessages(queueURL, MAX_MESSAGES);
+					return consumer.pull(River.BATCH_SIZE);
+				}
+
+				void processed(List<String> messages, boolean success) {
+					consumer.processed(messages, success);
+				}
+
+				long idleSleepMillis() {
+					return 0; // the consumer long-polls SQS in the background
 				}
-			}));
+
+				public synchronized void stop() {
+					super.stop();
+					consumer.stop();
+				}
+			};
+			if (POLLING_THREADS.putIfAbsent(queueURL, river) == null) {
+				consumer.start();
+				river.start(StringUtils.substringAfterLast(queueURL, "/"), River.WORKERS);
+			}
 			Para.addDestroyListener(new DestroyListener() {
 				public void onDestroy() {
 					stopPollingForMessages(queueURL);
@@ -257,14 +290,17 @@ public final class AWSQueueUtils {
 	}
 
 	/**
-	 * Stops the thread that has been polling for messages.
+	 * Stops the river workers, after they finish processing the messages they have pulled.
+	 * Messages received in advance, but not yet pulled by a worker, are made visible again.
 	 * @param queueURL the queue URL
 	 */
 	protected static void stopPollingForMessages(String queueURL) {
 		if (!StringUtils.isBlank(queueURL) && POLLING_THREADS.containsKey(queueURL)) {
 			logger.info("Stopping SQS river on queue {} ...", queueURL);
-			POLLING_THREADS.get(queueURL).cancel(true);
-			POLLING_THREADS.remove(queueURL);
+			River river = POLLING_THREADS.remove(queueURL);
+			if (river != null) {
+				river.stop();
+			}
 		}
 	}
 
@@ -0,0 +1,734 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.queue;
+
+import com.erudika.para.DestroyListener;
+import com.erudika.para.Para;
+import com.erudika.para.utils.Config;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import javax.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A durable queue for single-node deployments, stored in an append-only log of memory-mapped segment files
+ * in {@code queue.disk_dir}. Messages are appended to the last segment and a new segment is started when it's full.
+ * The river commits its position (the consumer offset) only after a batch of messages has been processed,
+ * so messages which were pulled but not processed before a crash or restart are delivered again (at-least-once).
+ * Segments which have been fully consumed are deleted.
+ * <br>
+ * A batch which fails to process is delivered again after {@code queue.disk_redelivery_delay_sec}, up to
+ * {@code queue.disk_max_redeliveries} times. After that, its messages are appended to the dead-letter file
+ * {@code <name>.dead} in the same directory and the batch is committed, so one bad batch can't stall the queue.
+ * <br>
+ * Messages pushed with a delay are appended to {@code <name>.delayed} and moved to the log once they're due.
+ * Only their positions and due times are kept in memory. The file is emptied once all of them have been moved,
+ * and rewritten when most of it is taken up by messages which have been moved.
+ * <br>
+ * Writes survive a crash of the JVM as soon as they're made. Set {@code queue.disk_sync} to {@code true} to also
+ * flush every write to disk, which protects against a crash of the OS at a large cost in throughput.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@Singleton
+public class DiskQueue implements Queue {
+
+	private static final Logger logger = LoggerFactory.getLogger(DiskQueue.class);
+	private static final String DIR = Config.getConfigParam("queue.disk_dir", "data/queue");
+	private static final int SEGMENT_SIZE = Config.getConfigInt("queue.disk_segment_size_mb", 64) * 1024 * 1024;
+	private static final boolean SYNC = Config.getConfigBoolean("queue.disk_sync", false);
+	private static final long POLL_WAIT_MS = 1000;
+	static final int MAX_REDELIVERIES = Config.getConfigInt("queue.disk_max_redeliveries", 5);
+	static final long REDELIVERY_DELAY_MS = Config.getConfigInt("queue.disk_redelivery_delay_sec", 10) * 1000L;
+	private static final int HEADER_SIZE = 8; // length + CRC32
+	private static final int END_OF_SEGMENT = -1;
+	private static final int DELAYED_HEADER_SIZE = 16; // due time + length + CRC32
+	private static final long MOVED = -1;
+
+	private final Path dir;
+	private final int segmentSize;
+	private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+	private final TreeMap<Long, Long> inFlight = new TreeMap<>();
+	private final PriorityQueue<Batch> failed = new PriorityQueue<>(Comparator.comparingLong(b -> b.redeliverAt));
+	private final PriorityQueue<DelayedMessage> delayed =
+			new PriorityQueue<>(Comparator.<DelayedMessage>comparingLong(m -> m.deliverAt).thenComparingLong(m -> m.seq));
+	private String name;
+	private MappedByteBuffer offsetFile;
+	private long writePos;
+	private long readPos;
+	private long commitPos;
+	private FileChannel delayedFile;
+	private long delayedSize;
+	private long movedBytes;
+	private long delayedSeq;
+	private River river;
+
+	/**
+	 * No-args constructor.
+	 */
+	public DiskQueue() {
+		this(Config.DEFAULT_QUEUE_NAME);
+	}
+
+	/**
+	 * @param name the name of the queue
+	 */
+	public DiskQueue(String name) {
+		this(name, Paths.get(DIR), SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param name the name of the queue
+	 * @param dir the directory for the segment files
+	 * @param segmentSize the size of each segment in bytes
+	 */
+	DiskQueue(String name, Path dir, int segmentSize) {
+		this.name = name;
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+	}
+
+	@Override
+	public synchronized String pull() {
+		try {
+			open();
+			moveDueMessages();
+		} catch (IOException e) {
+			logger.error("Failed to read from queue '{}': {}", name, e.getMessage());
+			return "";
+		}
+		// failed batches are left for the river, which pulled them
+		Batch batch = readBatch(1);
+		commit(batch);
+		return batch.isEmpty() ? "" : batch.get(0);
+	}
+
+	@Override
+	public synchronized void push(String task) {
+		byte[] bytes = toBytes(task);
+		if (bytes == null) {
+			return;
+		}
+		try {
+			open();
+			append(bytes);
+			notifyAll();
+		} catch (IOException e) {
+			logger.error("Failed to write to queue '{}': {}", name, e.getMessage());
+		}
+	}
+
+	@Override
+	public void push(String task, int delaySeconds) {
+		if (delaySeconds <= 0) {
+			push(task);
+		} else {
+			pushAt(task, System.currentTimeMillis() + delaySeconds * 1000L);
+		}
+	}
+
+	/**
+	 * Stores a message in the file of delayed messages, to be moved to the log once it's due.
+	 * @param task the message
+	 * @param deliverAt when the message is due
+	 */
+	synchronized void pushAt(String task, long deliverAt) {
+		byte[] bytes = toBytes(task);
+		if (bytes == null) {
+			return;
+		}
+		try {
+			open();
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			ByteBuffer buf = ByteBuffer.allocate(DELAYED_HEADER_SIZE + bytes.length);
+			buf.putLong(deliverAt).putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+			writeFully(delayedFile, buf, delayedSize);
+			if (SYNC) {
+				delayedFile.force(false);
+			}
+			delayed.add(new DelayedMessage(deliverAt, delayedSize, bytes.length, delayedSeq++));
+			delayedSize += buf.capacity();
+			notifyAll();
+		} catch (IOException e) {
+			logger.error("Failed to write to queue '{}': {}", name, e.getMessage());
+		}
+	}
+
+	private byte[] toBytes(String task) {
+		if (StringUtils.isBlank(task)) {
+			return null;
+		}
+		byte[] bytes = task.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length + HEADER_SIZE > segmentSize) {
+			logger.warn("Message of {} bytes is too large for queue '{}' - message dropped.", bytes.length, name);
+			return null;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Appends a message to the log.
+	 * @param bytes the message
+	 * @throws IOException if a new segment can't be created
+	 */
+	private void append(byte[] bytes) throws IOException {
+		long base = segments.lastKey();
+		int pos = (int) (writePos - base);
+		if (pos + HEADER_SIZE + bytes.length > segmentSize) {
+			// roll over to a new segment
+			if (pos + 4 <= segmentSize) {
+				segments.get(base).putInt(pos, END_OF_SEGMENT);
+			}
+			base += segmentSize;
+			pos = 0;
+			writePos = base;
+			mapSegment(base);
+		}
+		MappedByteBuffer segment = segments.get(base);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		ByteBuffer buf = segment.duplicate();
+		buf.position(pos + 4);
+		buf.putInt((int) crc.getValue());
+		buf.put(bytes);
+		// the length goes in last, making the message visible
+		segment.putInt(pos, bytes.length);
+		if (SYNC) {
+			segment.force();
+		}
+		writePos = base + pos + HEADER_SIZE + bytes.length;
+	}
+
+	/**
+	 * Waits for messages and reads all that are available, up to a maximum number.
+	 * A failed batch which is due for redelivery is returned first, as it was.
+	 * The messages must be committed with {@link #commit(com.erudika.para.queue.DiskQueue.Batch)} once processed,
+	 * or released with {@link #release(com.erudika.para.queue.DiskQueue.Batch, long)} if processing failed.
+	 * @param maxMessages the maximum number of messages to read
+	 * @param waitMillis how long to wait for the first message
+	 * @return a batch of messages, empty if none arrived in time
+	 */
+	synchronized Batch pull(int maxMessages, long waitMillis) {
+		try {
+			open();
+			moveDueMessages();
+			Batch retry = pollFailed();
+			if (retry != null) {
+				return retry;
+			}
+			if (readPos >= writePos && waitMillis > 0) {
+				wait(waitFor(waitMillis));
+				moveDueMessages();
+				retry = pollFailed();
+				if (retry != null) {
+					return retry;
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Failed to read from queue '{}': {}", name, e.getMessage());
+			return new Batch(readPos, readPos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return readBatch(maxMessages);
+	}
+
+	private Batch readBatch(int maxMessages) {
+		long start = readPos;
+		List<String> messages = new ArrayList<>();
+		while (messages.size() < maxMessages && readPos < writePos) {
+			String msg = readNext();
+			if (msg != null) {
+				messages.add(msg);
+			}
+		}
+		Batch batch = new Batch(start, readPos);
+		batch.addAll(messages);
+		if (batch.end > batch.start) {
+			inFlight.put(batch.start, batch.end);
+		}
+		return batch;
+	}
+
+	/**
+	 * Marks a batch of messages as processed. The consumer offset moves forward once all earlier batches
+	 * have been committed too, and segments left behind it are deleted.
+	 * @param batch a batch returned by {@link #pull(int, long)}
+	 */
+	synchronized void commit(Batch batch) {
+		if (batch == null || inFlight.remove(batch.start) == null) {
+			return;
+		}
+		long newCommitPos = inFlight.isEmpty() ? readPos : inFlight.firstKey();
+		if (newCommitPos > commitPos) {
+			commitPos = newCommitPos;
+			offsetFile.putLong(0, commitPos);
+			deleteConsumedSegments();
+		}
+	}
+
+	/**
+	 * Marks a batch of messages as failed. The batch stays in flight, so the consumer offset doesn't move past it,
+	 * and it's delivered again after a delay. Once it has failed too many times, its messages are moved to the
+	 * dead-letter file and the batch is committed.
+	 * @param batch a batch returned by {@link #pull(int, long)}
+	 * @param delayMillis how long to wait before delivering the batch again
+	 */
+	synchronized void release(Batch batch, long delayMillis) {
+		if (batch == null || !inFlight.containsKey(batch.start)) {
+			return;
+		}
+		batch.attempts++;
+		if (batch.attempts > MAX_REDELIVERIES) {
+			deadLetter(batch);
+			commit(batch);
+		} else {
+			batch.redeliverAt = System.currentTimeMillis() + delayMillis;
+			failed.add(batch);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @param waitMillis how long to wait for a message at most
+	 * @return how long to wait for a message, so that the next failed batch or delayed message isn't held up
+	 */
+	private long waitFor(long waitMillis) {
+		long now = System.currentTimeMillis();
+		long wait = waitMillis;
+		if (!failed.isEmpty()) {
+			wait = Math.min(wait, failed.peek().redeliverAt - now);
+		}
+		if (!delayed.isEmpty()) {
+			wait = Math.min(wait, delayed.peek().deliverAt - now);
+		}
+		return Math.max(1, wait);
+	}
+
+	/**
+	 * Moves the delayed messages which are due to the log. Each one is marked as moved in the file of delayed
+	 * messages right after, so a crash in between delivers it twice at worst.
+	 * @throws IOException if the file of delayed messages can't be read or written
+	 */
+	private void moveDueMessages() throws IOException {
+		long now = System.currentTimeMillis();
+		boolean moved = false;
+		while (!delayed.isEmpty() && delayed.peek().deliverAt <= now) {
+			DelayedMessage msg = delayed.peek();
+			ByteBuffer record = readFully(delayedFile, msg.pos, DELAYED_HEADER_SIZE + msg.length);
+			byte[] bytes = new byte[msg.length];
+			record.position(DELAYED_HEADER_SIZE);
+			record.get(bytes);
+			append(bytes);
+			ByteBuffer mark = ByteBuffer.allocate(8);
+			mark.putLong(0, MOVED);
+			writeFully(delayedFile, mark, msg.pos);
+			delayed.poll();
+			movedBytes += record.capacity();
+			moved = true;
+		}
+		if (moved) {
+			compactDelayed();
+		}
+	}
+
+	/**
+	 * Empties the file of delayed messages once they have all been moved, or rewrites it with only the messages
+	 * which are still waiting, once most of it is taken up by moved ones.
+	 * @throws IOException if the file can't be written
+	 */
+	private void compactDelayed() throws IOException {
+		if (delayed.isEmpty()) {
+			delayedFile.truncate(0);
+			delayedSize = 0;
+			movedBytes = 0;
+			return;
+		}
+		if (movedBytes < segmentSize || movedBytes < delayedSize / 2) {
+			return;
+		}
+		Path file = dir.resolve(name + ".delayed");
+		Path tmp = dir.resolve(name + ".delayed.tmp");
+		List<DelayedMessage> waiting = new ArrayList<>(delayed);
+		waiting.sort(Comparator.comparingLong(m -> m.pos));
+		long[] positions = new long[waiting.size()];
+		long pos = 0;
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (int i = 0; i < waiting.size(); i++) {
+				DelayedMessage msg = waiting.get(i);
+				ByteBuffer record = readFully(delayedFile, msg.pos, DELAYED_HEADER_SIZE + msg.length);
+				writeFully(out, record, pos);
+				positions[i] = pos;
+				pos += record.capacity();
+			}
+			out.force(false);
+		}
+		delayedFile.close();
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		delayedFile = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		for (int i = 0; i < waiting.size(); i++) {
+			waiting.get(i).pos = positions[i];
+		}
+		delayedSize = pos;
+		movedBytes = 0;
+	}
+
+	/**
+	 * Opens the file of delayed messages and loads the positions and due times of those which haven't been moved.
+	 * An incomplete message at the end, left by a crash, is cut off.
+	 * @throws IOException if the file can't be opened
+	 */
+	private void openDelayed() throws IOException {
+		delayedFile = FileChannel.open(dir.resolve(name + ".delayed"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = delayedFile.size();
+		long pos = 0;
+		while (pos + DELAYED_HEADER_SIZE <= size) {
+			ByteBuffer header = readFully(delayedFile, pos, DELAYED_HEADER_SIZE);
+			long deliverAt = header.getLong(0);
+			int length = header.getInt(8);
+			if (length <= 0 || pos + DELAYED_HEADER_SIZE + length > size) {
+				break;
+			}
+			if (deliverAt == MOVED) {
+				movedBytes += DELAYED_HEADER_SIZE + length;
+			} else {
+				ByteBuffer bytes = readFully(delayedFile, pos + DELAYED_HEADER_SIZE, length);
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				if ((int) crc.getValue() != header.getInt(12)) {
+					break;
+				}
+				delayed.add(new DelayedMessage(deliverAt, pos, length, delayedSeq++));
+			}
+			pos += DELAYED_HEADER_SIZE + length;
+		}
+		if (pos < size) {
+			logger.warn("Queue '{}' has an incomplete delayed message at {} - ignoring the rest of the file.", name, pos);
+			delayedFile.truncate(pos);
+		}
+		delayedSize = pos;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long pos, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, pos + buf.position()) < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf, pos + buf.position());
+		}
+	}
+
+	private Batch pollFailed() {
+		if (!failed.isEmpty() && failed.peek().redeliverAt <= System.currentTimeMillis()) {
+			return failed.poll();
+		}
+		return null;
+	}
+
+	private void deadLetter(Batch batch) {
+		logger.warn("Batch of {} messages in queue '{}' failed {} times - moving it to {}.dead.",
+				batch.size(), name, batch.attempts, name);
+		try {
+			Files.write(dir.resolve(name + ".dead"), batch, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			logger.error("Failed to write to the dead-letter file of queue '{}' - {} messages lost: {}",
+					name, batch.size(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the message at the current read position and moves past it.
+	 * @return a message or null if the read position moved to the next segment
+	 */
+	private String readNext() {
+		Map.Entry<Long, MappedByteBuffer> entry = segments.floorEntry(readPos);
+		long base = entry.getKey();
+		int pos = (int) (readPos - base);
+		int length = (pos + HEADER_SIZE <= segmentSize) ? entry.getValue().getInt(pos) : END_OF_SEGMENT;
+		if (length <= 0) {
+			readPos = base + segmentSize;
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer buf = entry.getValue().duplicate();
+		buf.position(pos + HEADER_SIZE);
+		buf.get(bytes);
+		readPos = base + pos + HEADER_SIZE + length;
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Opens the log, restores the consumer offset and finds the end of the last segment.
+	 * @throws IOException if the files can't be opened
+	 */
+	private void open() throws IOException {
+		if (offsetFile != null) {
+			return;
+		}
+		Files.createDirectories(dir);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, name + "-*.log")) {
+			for (Path file : files) {
+				String base = StringUtils.substringBetween(file.getFileName().toString(), name + "-", ".log");
+				if (StringUtils.isNumeric(base)) {
+					mapSegment(Long.parseLong(base));
+				}
+			}
+		}
+		try (FileChannel channel = FileChannel.open(dir.resolve(name + ".offset"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			offsetFile = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+		}
+		commitPos = offsetFile.getLong(0);
+		if (segments.isEmpty()) {
+			mapSegment(commitPos - (commitPos % segmentSize));
+		}
+		writePos = findEndOfLog();
+		commitPos = Math.min(Math.max(commitPos, segments.firstKey()), writePos);
+		readPos = commitPos;
+		openDelayed();
+		logger.info("Opened queue '{}' in {} - {} bytes of unprocessed messages.", name, dir, writePos - readPos);
+	}
+
+	/**
+	 * Scans the last segment for the last valid message.
+	 * @return the position after the last message
+	 */
+	private long findEndOfLog() {
+		long base = segments.lastKey();
+		MappedByteBuffer segment = segments.get(base);
+		int pos = 0;
+		while (pos + HEADER_SIZE <= segmentSize) {
+			int length = segment.getInt(pos);
+			if (length == END_OF_SEGMENT) {
+				return base + segmentSize;
+			}
+			if (length <= 0 || pos + HEADER_SIZE + length > segmentSize) {
+				break;
+			}
+			byte[] bytes = new byte[length];
+			ByteBuffer buf = segment.duplicate();
+			buf.position(pos + HEADER_SIZE);
+			buf.get(bytes);
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			if ((int) crc.getValue() != segment.getInt(pos + 4)) {
+				logger.warn("Queue '{}' has an incomplete message at {} - ignoring the rest of the log.", name, base + pos);
+				break;
+			}
+			pos += HEADER_SIZE + length;
+		}
+		return base + pos;
+	}
+
+	private void mapSegment(long base) throws IOException {
+		Path file = dir.resolve(name + "-" + StringUtils.leftPad(Long.toString(base), 20, '0') + ".log");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			segments.put(base, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+		}
+	}
+
+	private void deleteConsumedSegments() {
+		Iterator<Long> bases = segments.headMap(segments.lastKey()).keySet().iterator();
+		while (bases.hasNext()) {
+			long base = bases.next();
+			if (base + segmentSize > commitPos) {
+				break;
+			}
+			// the mapping pins the file (and on some platforms blocks the delete) until it's released
+			unmap(segments.get(base));
+			bases.remove();
+			try {
+				Files.deleteIfExists(dir.resolve(name + "-" + StringUtils.leftPad(Long.toString(base), 20, '0') + ".log"));
+			} catch (IOException e) {
+				logger.debug("Failed to delete consumed segment {} of queue '{}': {}", base, name, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Releases the memory mapping of a segment right away, instead of when the buffer is garbage collected.
+	 * The buffer must not be used afterwards.
+	 * @param buffer a mapped segment
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				// Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		} catch (Exception e) {
+			logger.debug("Failed to unmap a segment, it will be released by the GC: {}", e.toString());
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized void setName(String name) {
+		if (!StringUtils.equals(this.name, name)) {
+			this.name = name;
+			segments.clear();
+			inFlight.clear();
+			failed.clear();
+			delayed.clear();
+			closeDelayed();
+			offsetFile = null;
+		}
+	}
+
+	private void closeDelayed() {
+		if (delayedFile != null) {
+			try {
+				delayedFile.close();
+			} catch (IOException e) {
+				logger.debug("Failed to close the file of delayed messages of queue '{}': {}", name, e.getMessage());
+			}
+		}
+		delayedFile = null;
+		delayedSize = 0;
+		movedBytes = 0;
+	}
+
+	@Override
+	public synchronized void startPolling() {
+		if (river == null) {
+			logger.info("Starting disk river on queue '{}' (workers: {})", name, River.WORKERS);
+			river = new River() {
+				List<String> pullMessages() {
+					return pull(River.BATCH_SIZE, POLL_WAIT_MS);
+				}
+
+				void processed(List<String> messages, boolean success) {
+					if (success) {
+						commit((Batch) messages);
+					} else {
+						release((Batch) messages, REDELIVERY_DELAY_MS);
+					}
+				}
+
+				long idleSleepMillis() {
+					return 0; // pulling blocks until there are messages
+				}
+			};
+			river.start(name, River.WORKERS);
+			Para.addDestroyListener(new DestroyListener() {
+				public void onDestroy() {
+					stopPolling();
+				}
+			});
+		}
+	}
+
+	@Override
+	public void stopPolling() {
+		River r;
+		synchronized (this) {
+			r = river;
+			river = null;
+		}
+		if (r != null) {
+			logger.info("Stopping disk river on queue '{}'...", name);
+			r.stop();
+		}
+	}
+
+	/**
+	 * A batch of messages and the range of the log it was read from.
+	 */
+	static final class Batch extends ArrayList<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long start;
+		private final long end;
+		private int attempts;
+		private long redeliverAt;
+
+		Batch(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * The position and due time of a message in the file of delayed messages.
+	 */
+	private static final class DelayedMessage {
+
+		private final long deliverAt;
+		private final int length;
+		private final long seq;
+		private long pos;
+
+		DelayedMessage(long deliverAt, long pos, int length, long seq) {
+			this.deliverAt = deliverAt;
+			this.pos = pos;
+			this.length = length;
+			this.seq = seq;
+		}
+	}
+}
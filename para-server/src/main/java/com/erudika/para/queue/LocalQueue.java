@@ -20,29 +20,41 @@ package com.erudika.para.queue;
 import com.erudika.para.DestroyListener;
 import com.erudika.para.Para;
 import com.erudika.para.utils.Config;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Future;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * An in-memory, bounded queue. The river blocks until messages arrive and then drains them in batches,
+ * so pushed messages are processed right away. When the queue is full, {@link #push(java.lang.String)} waits
+ * up to {@code queue.local_push_timeout_ms} for space and then drops the message. Messages pushed with a delay
+ * are held aside and join the queue once they're due.
  * @author Alex Bogdanovski [alex@erudika.com]
  */
 @Singleton
 public class LocalQueue implements Queue {
 
 	private static final Logger logger = LoggerFactory.getLogger(MockQueue.class);
-	private static final int SLEEP = Config.getConfigInt("queue.polling_sleep_seconds", 60);
-	private static Future<?> pollingTask;
-	private static final int POLLING_INTERVAL = Config.getConfigInt("queue.polling_interval_seconds",
-			Config.IN_PRODUCTION ? 20 : 5);
+	private static River pollingTask;
+	// short, so that stopping the river doesn't have to wait long - a push wakes up a worker immediately
+	private static final long POLL_WAIT_MS = 1000;
+	/**
+	 * Maximum number of messages waiting in the queue. Default is {@code 10000}.
+	 */
+	private static final int CAPACITY = Config.getConfigInt("queue.local_capacity", 10000);
+	private static final int PUSH_TIMEOUT_MS = Config.getConfigInt("queue.local_push_timeout_ms", 1000);
 
-	private ConcurrentLinkedQueue<String> q = new ConcurrentLinkedQueue<>();
+	private final BlockingQueue<String> q;
+	private final DelayQueue<DelayedMessage> delayed = new DelayQueue<>();
+	private final int capacity;
 	private String name;
 
 	/**
@@ -56,11 +68,22 @@ public class LocalQueue implements Queue {
 	 * @param name name
 	 */
 	public LocalQueue(String name) {
+		this(name, CAPACITY);
+	}
+
+	/**
+	 * @param name name
+	 * @param capacity maximum number of messages in the queue
+	 */
+	LocalQueue(String name, int capacity) {
 		this.name = name;
+		this.capacity = capacity;
+		this.q = new LinkedBlockingQueue<>(capacity);
 	}
 
 	@Override
 	public String pull() {
+		moveDueMessages();
 		String s = q.poll();
 		return StringUtils.isBlank(s) ? "" : s;
 	}
@@ -68,10 +91,82 @@ public class LocalQueue implements Queue {
 	@Override
 	public void push(String task) {
 		if (!StringUtils.isBlank(task)) {
-			q.add(task);
+			try {
+				if (!q.offer(task, PUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					logger.warn("Local queue '{}' is full ({} messages) - message dropped.", name, q.size());
+				}
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted while waiting to push a message to local queue '{}'.", name);
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Pushes a message to the queue once the delay has passed. Until then, it doesn't take up space in the queue,
+	 * but it's dropped if {@code queue.local_capacity} messages are already waiting for their delay.
+	 * @param task the message
+	 * @param delaySeconds the delay in seconds
+	 */
+	@Override
+	public void push(String task, int delaySeconds) {
+		if (delaySeconds <= 0) {
+			push(task);
+		} else if (!StringUtils.isBlank(task)) {
+			if (delayed.size() >= capacity) {
+				logger.warn("Local queue '{}' has too many delayed messages ({}) - message dropped.", name, delayed.size());
+			} else {
+				delayed.add(new DelayedMessage(task, System.currentTimeMillis() + delaySeconds * 1000L));
+			}
+		}
+	}
+
+	/**
+	 * Waits for messages and takes all that are available, up to a maximum number.
+	 * @param maxMessages the maximum number of messages to take
+	 * @param waitMillis how long to wait for the first message
+	 * @return a list of messages, empty if none arrived in time
+	 */
+	List<String> pull(int maxMessages, long waitMillis) {
+		List<String> messages = new ArrayList<>(maxMessages);
+		try {
+			moveDueMessages();
+			String first = q.poll(waitFor(waitMillis), TimeUnit.MILLISECONDS);
+			if (first == null) {
+				moveDueMessages();
+				first = q.poll();
+			}
+			if (first != null) {
+				messages.add(first);
+				q.drainTo(messages, maxMessages - 1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return messages;
+	}
+
+	/**
+	 * Moves the delayed messages which are due to the queue, as long as there's space for them.
+	 */
+	private void moveDueMessages() {
+		for (DelayedMessage msg = delayed.poll(); msg != null; msg = delayed.poll()) {
+			if (!q.offer(msg.task)) {
+				delayed.add(msg);
+				return;
+			}
 		}
 	}
 
+	/**
+	 * @param waitMillis how long to wait for a message at most
+	 * @return how long to wait for a message, so that the next delayed message isn't held up
+	 */
+	private long waitFor(long waitMillis) {
+		DelayedMessage next = delayed.peek();
+		return (next == null) ? waitMillis : Math.max(0, Math.min(waitMillis, next.getDelay(TimeUnit.MILLISECONDS)));
+	}
+
 	@Override
 	public String getName() {
 		return name;
@@ -96,14 +191,19 @@ public class LocalQueue implements Queue {
 	 * Starts polling for messages from SQS in a separate thread.
 	 * @param queue a queue instance
 	 */
-	static void startPollingForMessages(Queue queue) {
+	static void startPollingForMessages(LocalQueue queue) {
 		if (pollingTask == null) {
-			logger.info("Starting local river (polling interval: {}s)", POLLING_INTERVAL);
-			pollingTask = Para.getExecutorService().submit(new River() {
+			logger.info("Starting local river (workers: {})", River.WORKERS);
+			pollingTask = new River() {
 				List<String> pullMessages() {
-					return Collections.singletonList(queue.pull());
+					return queue.pull(River.BATCH_SIZE, POLL_WAIT_MS);
 				}
-			});
+
+				long idleSleepMillis() {
+					return 0; // pulling blocks until there are messages
+				}
+			};
+			pollingTask.start(queue.getName(), River.WORKERS);
 			Para.addDestroyListener(new DestroyListener() {
 				public void onDestroy() {
 					stopPollingForMessages();
@@ -113,13 +213,36 @@ public class LocalQueue implements Queue {
 	}
 
 	/**
-	 * Stops the thread that has been polling for messages.
+	 * Stops the river workers, after they finish processing the messages they have pulled.
 	 */
 	static void stopPollingForMessages() {
 		if (pollingTask != null) {
 			logger.info("Stopping local river...");
-			pollingTask.cancel(true);
+			pollingTask.stop();
 		}
 	}
 
+	/**
+	 * A message waiting for its delay to pass.
+	 */
+	private static final class DelayedMessage implements Delayed {
+
+		private final String task;
+		private final long deliverAt;
+
+		DelayedMessage(String task, long deliverAt) {
+			this.task = task;
+			this.deliverAt = deliverAt;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deliverAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+		}
+	}
 }
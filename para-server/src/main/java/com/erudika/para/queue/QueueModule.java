@@ -41,6 +41,9 @@ public class QueueModule extends AbstractModule {
 			if ("sqs".equalsIgnoreCase(selectedQueue) ||
 					AWSQueue.class.getSimpleName().equalsIgnoreCase(selectedQueue)) {
 				bind(Queue.class).to(AWSQueue.class).asEagerSingleton();
+			} else if ("disk".equalsIgnoreCase(selectedQueue) ||
+					DiskQueue.class.getSimpleName().equalsIgnoreCase(selectedQueue)) {
+				bind(Queue.class).to(DiskQueue.class).asEagerSingleton();
 			} else {
 				Queue queuePlugin = loadExternalQueue(selectedQueue);
 				if (queuePlugin != null) {
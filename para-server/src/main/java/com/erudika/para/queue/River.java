@@ -26,15 +26,27 @@ import com.erudika.para.core.utils.ParaObjectUtils;
 import com.erudika.para.utils.Config;
 import com.erudika.para.webhooks.WebhookUtils;
 import com.fasterxml.jackson.databind.ObjectReader;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Pulls messages from a queue and processes them.
+ * A river is run by a number of worker threads of its own (see {@link #start(java.lang.String, int)}), each one
+ * pulling and persisting its own batches of messages. When stopped, workers finish the batch at hand before exiting.
+ * Messages pulled within a short window are grouped by app and written with one batch call per app and operation.
+ * A batch with webhook payloads is reported as processed only once they have been delivered or queued again.
  * Adapted from https://github.com/albogdano/elasticsearch-river-amazonsqs
  * @author Alex Bogdanovski [alex@erudika.com]
  */
@@ -49,57 +61,126 @@ public abstract class River implements Runnable {
 	public static final int POLLING_INTERVAL = Config.getConfigInt("queue.polling_interval_seconds",
 			Config.IN_PRODUCTION ? 20 : 5);
 
+	/**
+	 * The number of worker threads consuming messages from each queue. Default is the number of CPU cores.
+	 */
+	public static final int WORKERS = Config.getConfigInt("queue.workers", Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * The maximum number of messages pulled from a queue at once by each worker. Default is {@code 10}.
+	 */
+	public static final int BATCH_SIZE = Config.getConfigInt("queue.batch_size", 10);
+
+	private static final int DRAIN_TIMEOUT_SEC = Config.getConfigInt("queue.drain_timeout_seconds", 30);
+	private static final long COALESCE_WINDOW_MS = Config.getConfigInt("queue.coalesce_window_ms", 100);
+	private static final int COALESCE_MAX_MESSAGES = Config.getConfigInt("queue.coalesce_max_messages", 1000);
+	private static final long DEFERRED_SLEEP_MS = 1000;
+
+	private final Object idleLock = new Object();
+	private volatile boolean running = true;
+	private ExecutorService workers;
+
 	/**
 	 * @return a list of messages pulled from queue
 	 */
 	abstract List<String> pullMessages();
 
 	/**
-	 * Starts the river.
+	 * Called by a worker once it's done with a batch of messages.
+	 * @param messages the messages returned by {@link #pullMessages()}
+	 * @param success false if processing the batch failed
+	 */
+	void processed(List<String> messages, boolean success) {
+		// noop
+	}
+
+	/**
+	 * @return how long to sleep once the queue has been found empty a few times in a row, 0 for not sleeping
+	 */
+	long idleSleepMillis() {
+		return SLEEP * 1000L;
+	}
+
+	/**
+	 * Starts the river on a pool of worker threads.
+	 * @param name the name of the queue, used for naming the threads
+	 * @param numWorkers the number of workers
+	 */
+	public synchronized void start(String name, int numWorkers) {
+		if (workers != null) {
+			return;
+		}
+		int n = Math.max(1, numWorkers);
+		AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(n, r -> {
+			Thread t = new Thread(r, "river-" + name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		for (int i = 0; i < n; i++) {
+			workers.execute(this);
+		}
+	}
+
+	/**
+	 * Stops the river and waits for the workers to finish processing the messages they've already pulled.
+	 */
+	public synchronized void stop() {
+		running = false;
+		synchronized (idleLock) {
+			idleLock.notifyAll();
+		}
+		if (workers == null) {
+			return;
+		}
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+				logger.warn("River workers did not finish in {}s and will be interrupted.", DRAIN_TIMEOUT_SEC);
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs a single worker until the river is stopped.
 	 */
 	public void run() {
-		List<ParaObject> createList = new LinkedList<>();
-		List<ParaObject> updateList = new LinkedList<>();
-		List<ParaObject> deleteList = new LinkedList<>();
-		ObjectReader jreader = ParaObjectUtils.getJsonReader(Map.class);
 		int idleCount = 0;
 
-		while (true) {
+		while (running) {
 			logger.debug("Waiting {}s for messages...", POLLING_INTERVAL);
-			List<String> msgs = pullMessages();
-			logger.debug("Pulled {} messages from queue.", msgs.size());
+			List<List<String>> batches = pullWindow();
+			int pulled = 0;
+			for (List<String> msgs : batches) {
+				pulled += msgs.size();
+			}
+			logger.debug("Pulled {} messages from queue.", pulled);
 
-			try {
-				int processedHooks = 0;
-				for (final String msg : msgs) {
-					logger.debug("Message from queue: {}", msg);
-					if (StringUtils.contains(msg, Config._APPID) && StringUtils.contains(msg, Config._TYPE)) {
-						processedHooks += parseAndCategorizeMessage(jreader.readValue(msg),
-								createList, updateList, deleteList);
-					}
+			if (processWindow(batches) > 0) {
+				idleCount = 0;
+			} else {
+				idleCount++;
+				// no tasks in queue => throttle down pull requests
+				long idleSleep = idleSleepMillis();
+				if (pulled > 0) {
+					// nothing to do, e.g. only webhook retries which aren't due yet and went back to a queue
+					// which can't delay them - don't spin on them
+					idleSleep = DEFERRED_SLEEP_MS;
 				}
-
-				if (!createList.isEmpty() || !updateList.isEmpty() || !deleteList.isEmpty() || processedHooks > 0) {
-					logger.debug("River summary: {} created, {} updated, {} deleted, {} webhooks delivered.",
-							createList.size(), updateList.size(), deleteList.size(), processedHooks);
-					persistChanges(createList, updateList, deleteList);
-					idleCount = 0;
-				} else if (msgs.isEmpty()) {
-					idleCount++;
-					// no tasks in queue => throttle down pull requests
-					if (SLEEP > 0 && idleCount >= 3) {
-						try {
-							logger.debug("Queue is empty. Sleeping for {}s...", SLEEP);
-							Thread.sleep((long) SLEEP * 1000);
-						} catch (InterruptedException e) {
-							logger.warn("River interrupted: ", e);
-							Thread.currentThread().interrupt();
-							break;
-						}
+				if (idleSleep > 0 && (idleCount >= 3 || pulled > 0)) {
+					try {
+						logger.debug("Nothing to process. Sleeping for {}ms...", idleSleep);
+						sleep(idleSleep);
+					} catch (InterruptedException e) {
+						logger.warn("River interrupted: ", e);
+						Thread.currentThread().interrupt();
+						break;
 					}
 				}
-			} catch (Exception e) {
-				logger.error("Batch processing operation failed: {}", e);
 			}
 			if (Thread.interrupted()) {
 				break;
@@ -107,8 +188,115 @@ public abstract class River implements Runnable {
 		}
 	}
 
-	private int parseAndCategorizeMessage(Map<String, Object> parsed, List<ParaObject> createList,
-			List<ParaObject> updateList, List<ParaObject> deleteList) {
+	/**
+	 * Processes a window of batches and reports each batch as processed. Messages which can't be parsed are
+	 * skipped. The changes of each app are written separately, so an app whose writes fail only fails the
+	 * batches its messages came from - these are delivered again, the others are acknowledged.
+	 * Webhooks are delivered in the background, so a batch with webhook payloads is reported later, once
+	 * all of them have been delivered or pushed back to the queue.
+	 * @param batches the batches pulled
+	 * @return the number of objects written and webhooks delivered
+	 */
+	int processWindow(List<List<String>> batches) {
+		Set<Integer> failed = new HashSet<>();
+		List<List<CompletableFuture<Boolean>>> hooks = new ArrayList<>(batches.size());
+		for (int i = 0; i < batches.size(); i++) {
+			hooks.add(new ArrayList<>(0));
+		}
+		int done = 0;
+		try {
+			Map<String, AppChanges> changes = new LinkedHashMap<>();
+			int processedHooks = categorizeMessages(batches, changes, hooks);
+			done = processedHooks;
+			if (!changes.isEmpty()) {
+				done += persistChanges(changes, processedHooks, failed);
+			}
+		} catch (Exception e) {
+			logger.error("Batch processing operation failed: {}", e);
+			for (int i = 0; i < batches.size(); i++) {
+				failed.add(i);
+			}
+		}
+		for (int i = 0; i < batches.size(); i++) {
+			processedWhenDelivered(batches.get(i), !failed.contains(i), hooks.get(i));
+		}
+		return done;
+	}
+
+	/**
+	 * Reports a batch as processed once the webhooks from its messages have been handed off.
+	 * @param batch a batch
+	 * @param success false if writing the changes from the batch failed
+	 * @param hooks completed with false for the webhooks which were neither delivered nor queued again
+	 */
+	private void processedWhenDelivered(List<String> batch, boolean success, List<CompletableFuture<Boolean>> hooks) {
+		if (hooks.isEmpty()) {
+			processed(batch, success);
+			return;
+		}
+		CompletableFuture.allOf(hooks.toArray(new CompletableFuture<?>[0])).whenComplete((res, err) -> {
+			boolean ok = success && err == null;
+			for (CompletableFuture<Boolean> hook : hooks) {
+				ok = ok && Boolean.TRUE.equals(hook.getNow(false));
+			}
+			processed(batch, ok);
+		});
+	}
+
+	/**
+	 * Keeps pulling full batches of messages for up to {@code queue.coalesce_window_ms}, so that they can be
+	 * written together. Stops as soon as the queue has no more messages waiting.
+	 * @return the batches pulled, at least one
+	 */
+	private List<List<String>> pullWindow() {
+		List<List<String>> batches = new ArrayList<>();
+		List<String> msgs = pullMessages();
+		batches.add(msgs);
+		int count = msgs.size();
+		long windowEnd = System.currentTimeMillis() + COALESCE_WINDOW_MS;
+		while (running && msgs.size() >= BATCH_SIZE && count < COALESCE_MAX_MESSAGES &&
+				System.currentTimeMillis() < windowEnd) {
+			msgs = pullMessages();
+			batches.add(msgs);
+			count += msgs.size();
+		}
+		return batches;
+	}
+
+	/**
+	 * Sleeps unless the river is stopped in the meantime.
+	 * @param millis time to sleep
+	 * @throws InterruptedException if interrupted
+	 */
+	private void sleep(long millis) throws InterruptedException {
+		synchronized (idleLock) {
+			if (running) {
+				idleLock.wait(millis);
+			}
+		}
+	}
+
+	private int categorizeMessages(List<List<String>> batches, Map<String, AppChanges> changes,
+			List<List<CompletableFuture<Boolean>>> hooks) {
+		ObjectReader jreader = ParaObjectUtils.getJsonReader(Map.class);
+		int processedHooks = 0;
+		for (int i = 0; i < batches.size(); i++) {
+			for (final String msg : batches.get(i)) {
+				logger.debug("Message from queue: {}", msg);
+				if (StringUtils.contains(msg, Config._APPID) && StringUtils.contains(msg, Config._TYPE)) {
+					try {
+						processedHooks += parseAndCategorizeMessage(jreader.readValue(msg), changes, i, hooks.get(i));
+					} catch (Exception e) {
+						logger.warn("Skipped invalid message from queue: {} - {}", msg, e.getMessage());
+					}
+				}
+			}
+		}
+		return processedHooks;
+	}
+
+	private int parseAndCategorizeMessage(Map<String, Object> parsed, Map<String, AppChanges> changes, int batch,
+			List<CompletableFuture<Boolean>> hooks) {
 		String id = parsed.containsKey(Config._ID) ? (String) parsed.get(Config._ID) : null;
 		String type = (String) parsed.get(Config._TYPE);
 		String appid = (String) parsed.get(Config._APPID);
@@ -117,40 +305,109 @@ public abstract class River implements Runnable {
 
 		if (!StringUtils.isBlank(appid) && isWhitelistedType) {
 			if ("webhookpayload".equals(type)) {
-				return WebhookUtils.processWebhookPayload(appid, id, parsed);
+				CompletableFuture<Boolean> hook = new CompletableFuture<>();
+				hooks.add(hook);
+				return WebhookUtils.processWebhookPayload(appid, id, parsed, hook::complete);
 			}
+			AppChanges app = changes.computeIfAbsent(appid, k -> new AppChanges());
+			app.batches.add(batch);
 
 			if (parsed.containsKey("_delete") && "true".equals(parsed.get("_delete")) && id != null) {
 				Sysprop s = new Sysprop(id);
 				s.setAppid(appid);
-				deleteList.add(s);
+				app.deletes.put(id, s);
+				app.updates.remove(id);
 			} else {
 				if (id == null || "true".equals(parsed.get("_create"))) {
 					ParaObject obj = ParaObjectUtils.setAnnotatedFields(parsed);
 					if (obj != null) {
-						createList.add(obj);
+						app.creates.add(obj);
 					}
 				} else {
-					updateList.add(ParaObjectUtils.setAnnotatedFields(Para.getDAO().
-							read(appid, id), parsed, Locked.class));
+					app.updates.computeIfAbsent(id, k -> new ArrayList<>(1)).add(parsed);
 				}
 			}
 		}
 		return 0;
 	}
 
-	private void persistChanges(List<ParaObject> createList, List<ParaObject> updateList, List<ParaObject> deleteList) {
-		if (!createList.isEmpty()) {
-			Para.getDAO().createAll(createList);
+	/**
+	 * Writes the changes with one batch call per app and operation. The objects to be updated are read
+	 * with one batch call per app and all updates to the same object are merged into a single write.
+	 * @param changes the changes grouped by appid
+	 * @param processedHooks the number of webhooks delivered, for logging
+	 * @param failed collects the indexes of the batches with changes for apps which failed
+	 * @return the number of objects written
+	 */
+	private int persistChanges(Map<String, AppChanges> changes, int processedHooks, Set<Integer> failed) {
+		int created = 0;
+		int updated = 0;
+		int deleted = 0;
+		int failedApps = 0;
+		for (Map.Entry<String, AppChanges> entry : changes.entrySet()) {
+			String appid = entry.getKey();
+			AppChanges app = entry.getValue();
+			try {
+				created += persistCreates(appid, app);
+				updated += persistUpdates(appid, app);
+				deleted += persistDeletes(appid, app);
+			} catch (Exception e) {
+				logger.error("Failed to write the changes for app '{}' - their batches will be delivered again.",
+						appid, e);
+				failed.addAll(app.batches);
+				failedApps++;
+			}
+		}
+		logger.debug("River summary: {} apps ({} failed), {} created, {} updated, {} deleted, {} webhooks delivered.",
+				changes.size(), failedApps, created, updated, deleted, processedHooks);
+		return created + updated + deleted;
+	}
+
+	private int persistCreates(String appid, AppChanges app) {
+		if (app.creates.isEmpty()) {
+			return 0;
+		}
+		Para.getDAO().createAll(appid, app.creates);
+		return app.creates.size();
+	}
+
+	private int persistUpdates(String appid, AppChanges app) {
+		if (app.updates.isEmpty()) {
+			return 0;
 		}
-		if (!updateList.isEmpty()) {
-			Para.getDAO().updateAll(updateList);
+		Map<String, ParaObject> current = Para.getDAO().readAll(appid, new ArrayList<>(app.updates.keySet()), true);
+		List<ParaObject> updateList = new ArrayList<>(app.updates.size());
+		for (Map.Entry<String, List<Map<String, Object>>> update : app.updates.entrySet()) {
+			ParaObject obj = current.get(update.getKey());
+			if (obj == null) {
+				logger.debug("Object {}/{} not found - skipping update.", appid, update.getKey());
+				continue;
+			}
+			for (Map<String, Object> data : update.getValue()) {
+				ParaObjectUtils.setAnnotatedFields(obj, data, Locked.class);
+			}
+			updateList.add(obj);
 		}
-		if (!deleteList.isEmpty()) {
-			Para.getDAO().deleteAll(deleteList);
+		Para.getDAO().updateAll(appid, updateList);
+		return updateList.size();
+	}
+
+	private int persistDeletes(String appid, AppChanges app) {
+		if (app.deletes.isEmpty()) {
+			return 0;
 		}
-		createList.clear();
-		updateList.clear();
-		deleteList.clear();
+		Para.getDAO().deleteAll(appid, new ArrayList<>(app.deletes.values()));
+		return app.deletes.size();
+	}
+
+	/**
+	 * The changes to the objects of one app, collected from a window of messages.
+	 */
+	private static final class AppChanges {
+
+		private final List<ParaObject> creates = new ArrayList<>();
+		private final Map<String, List<Map<String, Object>>> updates = new LinkedHashMap<>();
+		private final Map<String, ParaObject> deletes = new LinkedHashMap<>();
+		private final Set<Integer> batches = new HashSet<>();
 	}
 }
@@ -36,6 +36,7 @@ import static com.erudika.para.rest.RestUtils.getDeleteResponse;
 import static com.erudika.para.rest.RestUtils.getEntity;
 import static com.erudika.para.rest.RestUtils.getOverwriteResponse;
 import static com.erudika.para.rest.RestUtils.getReadResponse;
+import static com.erudika.para.rest.RestUtils.getSelectFromParams;
 import static com.erudika.para.rest.RestUtils.getStatusResponse;
 import static com.erudika.para.rest.RestUtils.getUpdateResponse;
 import static com.erudika.para.rest.RestUtils.pathParam;
@@ -846,7 +847,8 @@ public final class Api1 extends ResourceConfig {
 		return new Inflector<ContainerRequestContext, Response>() {
 			public Response apply(ContainerRequestContext ctx) {
 				App app = (a != null) ? a : getPrincipalApp();
-				return getBatchReadResponse(app, queryParams("ids", ctx));
+				return getBatchReadResponse(app, queryParams("ids", ctx),
+						getSelectFromParams(ctx.getUriInfo().getQueryParameters()));
 			}
 		};
 	}
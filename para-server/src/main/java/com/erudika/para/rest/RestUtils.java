@@ -38,7 +38,11 @@ import com.erudika.para.utils.Utils;
 import static com.erudika.para.validation.ValidationUtils.isValidObject;
 import static com.erudika.para.validation.ValidationUtils.validateObject;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -48,8 +52,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +80,7 @@ import org.slf4j.LoggerFactory;
 public final class RestUtils {
 
 	private static final Logger logger = LoggerFactory.getLogger(RestUtils.class);
+	private static final int BATCH_CREATE_CHUNK_SIZE = Config.getConfigInt("batch_create_chunk_size", 100);
 
 	private RestUtils() { }
 
@@ -499,11 +505,22 @@ public final class RestUtils {
 	 * @return status code 200 or 400
 	 */
 	public static Response getBatchReadResponse(App app, List<String> ids) {
+		return getBatchReadResponse(app, ids, null);
+	}
+
+	/**
+	 * Batch read response as JSON. Only the selected fields are read from the DB.
+	 * @param app the current App object
+	 * @param ids list of ids
+	 * @param select list of fields to read, null or empty for all fields
+	 * @return status code 200 or 400
+	 */
+	public static Response getBatchReadResponse(App app, List<String> ids, List<String> select) {
 		try (Metrics.Context context = Metrics.time(app == null ? null : app.getAppid(),
 				RestUtils.class, "batch", "read")) {
 			if (app != null && ids != null && !ids.isEmpty()) {
 				ArrayList<ParaObject> results = new ArrayList<>(ids.size());
-				for (ParaObject result : Para.getDAO().readAll(app.getAppIdentifier(), ids, true).values()) {
+				for (ParaObject result : Para.getDAO().readAll(app.getAppIdentifier(), ids, select).values()) {
 					if (checkImplicitAppPermissions(app, result) && checkIfUserCanModifyObject(app, result)) {
 						results.add(result);
 					}
@@ -516,7 +533,11 @@ public final class RestUtils {
 	}
 
 	/**
-	 * Batch create response as JSON.
+	 * Batch create response as JSON. The request body is read as a stream - objects are converted one at a time
+	 * and written in chunks of {@code batch_create_chunk_size}, so the whole batch is never held in memory as
+	 * parsed JSON. A chunk is written only once all of its objects have been read, so a malformed object
+	 * fails its own chunk and the ones after it. The objects written before that are listed as {@code created}
+	 * in the error response.
 	 * @param app the current App object
 	 * @param is entity input stream
 	 * @return a status code 200 or 400
@@ -525,32 +546,23 @@ public final class RestUtils {
 		try (Metrics.Context context = Metrics.time(app == null ? null : app.getAppid(),
 				RestUtils.class, "batch", "create")) {
 			if (app != null) {
-				final LinkedList<ParaObject> newObjects = new LinkedList<>();
-				Set<String> ids = new LinkedHashSet<>();
-				Response entityRes = getEntity(is, List.class);
-				if (entityRes.getStatusInfo() == Response.Status.OK) {
-					List<Map<String, Object>> items = (List<Map<String, Object>>) entityRes.getEntity();
-					for (Map<String, Object> object : items) {
-						// can't create multiple apps in batch
-						String type = (String) object.get(Config._TYPE);
-						if (isNotAnApp(type)) {
-							warnIfUserTypeDetected(type);
-							ParaObject pobj = ParaObjectUtils.setAnnotatedFields(object);
-							if (pobj != null && isValidObject(app, pobj)) {
-								pobj.setAppid(app.getAppIdentifier());
-								setCreatorid(app, pobj);
-								if (pobj.getId() != null && ids.contains(pobj.getId())) {
-									logger.warn("Batch contains objects with duplicate ids. "
-											+ "Duplicate object {} might not be persisted!", pobj.getId());
-								}
-								ids.add(pobj.getId());
-								newObjects.add(pobj);
-							}
-						}
-					}
-
-					Para.getDAO().createAll(app.getAppIdentifier(), newObjects);
-
+				Response entityRes = getEntity(is, null);
+				if (entityRes.getStatusInfo() != Response.Status.OK) {
+					return entityRes;
+				}
+				final List<ParaObject> newObjects = new ArrayList<>();
+				Response res;
+				try (JsonParser parser = ParaObjectUtils.getJsonMapper().getFactory().createParser(is)) {
+					res = createInChunks(app, parser, newObjects) ? Response.ok(newObjects).build() :
+							getPartialResponse(Response.Status.BAD_REQUEST,
+									"Request body must be an array of objects.", newObjects);
+				} catch (JsonProcessingException e) {
+					res = getPartialResponse(Response.Status.BAD_REQUEST, e.getMessage(), newObjects);
+				} catch (IOException e) {
+					logger.error(null, e);
+					res = getPartialResponse(Response.Status.INTERNAL_SERVER_ERROR, e.toString(), newObjects);
+				}
+				if (!newObjects.isEmpty()) {
 					Para.asyncExecute(new Runnable() {
 						public void run() {
 							int typesCount = app.getDatatypes().size();
@@ -560,16 +572,89 @@ public final class RestUtils {
 							}
 						}
 					});
-				} else {
-					return entityRes;
 				}
-				return Response.ok(newObjects).build();
+				return res;
 			} else {
 				return getStatusResponse(Response.Status.BAD_REQUEST);
 			}
 		}
 	}
 
+	/**
+	 * Reads an array of objects and writes them in chunks.
+	 * @param app the current App object
+	 * @param parser a parser over the request body
+	 * @param newObjects collects the objects written
+	 * @return false if the body isn't an array of objects
+	 * @throws IOException if the body can't be read or parsed
+	 */
+	private static boolean createInChunks(App app, JsonParser parser, List<ParaObject> newObjects)
+			throws IOException {
+		ObjectReader reader = ParaObjectUtils.getJsonReader(Map.class);
+		Set<String> ids = new HashSet<>();
+		List<ParaObject> chunk = new ArrayList<>(BATCH_CREATE_CHUNK_SIZE);
+		JsonToken token = (parser.nextToken() == JsonToken.START_ARRAY) ? parser.nextToken() : null;
+		while (token == JsonToken.START_OBJECT) {
+			ParaObject pobj = toNewObject(app, reader.readValue(parser), ids);
+			if (pobj != null) {
+				chunk.add(pobj);
+			}
+			if (chunk.size() >= BATCH_CREATE_CHUNK_SIZE) {
+				createChunk(app, chunk, newObjects);
+			}
+			token = parser.nextToken();
+		}
+		if (token != JsonToken.END_ARRAY || parser.nextToken() != null) {
+			return false;
+		}
+		createChunk(app, chunk, newObjects);
+		return true;
+	}
+
+	/**
+	 * @param status the status code
+	 * @param message the error message
+	 * @param created the objects which were written before the error
+	 * @return an error response, which also lists the objects written, if any
+	 */
+	private static Response getPartialResponse(Response.Status status, String message, List<ParaObject> created) {
+		if (created.isEmpty()) {
+			return getStatusResponse(status, message);
+		}
+		Map<String, Object> error = new LinkedHashMap<>();
+		error.put("code", status.getStatusCode());
+		error.put("message", message);
+		error.put("created", created);
+		return Response.status(status).entity(error).type(MediaType.APPLICATION_JSON).build();
+	}
+
+	private static ParaObject toNewObject(App app, Map<String, Object> object, Set<String> ids) {
+		// can't create multiple apps in batch
+		String type = (String) object.get(Config._TYPE);
+		if (isNotAnApp(type)) {
+			warnIfUserTypeDetected(type);
+			ParaObject pobj = ParaObjectUtils.setAnnotatedFields(object);
+			if (pobj != null && isValidObject(app, pobj)) {
+				pobj.setAppid(app.getAppIdentifier());
+				setCreatorid(app, pobj);
+				if (pobj.getId() != null && !ids.add(pobj.getId())) {
+					logger.warn("Batch contains objects with duplicate ids. "
+							+ "Duplicate object {} might not be persisted!", pobj.getId());
+				}
+				return pobj;
+			}
+		}
+		return null;
+	}
+
+	private static void createChunk(App app, List<ParaObject> chunk, List<ParaObject> newObjects) {
+		if (!chunk.isEmpty()) {
+			Para.getDAO().createAll(app.getAppIdentifier(), chunk);
+			newObjects.addAll(chunk);
+			chunk.clear();
+		}
+	}
+
 	/**
 	 * Batch update response as JSON.
 	 * @param app the current App object
@@ -947,9 +1032,20 @@ public final class RestUtils {
 		pager.setSortby(paramOrDefault(params, "sort", pager.getSortby()));
 		pager.setDesc(Boolean.parseBoolean(paramOrDefault(params, "desc", "true")));
 		pager.setLastKey(paramOrDefault(params, "lastKey", null));
+		pager.setSelect(getSelectFromParams(params));
 		return pager;
 	}
 
+	/**
+	 * Returns the list of fields from the "select" parameter.
+	 * @param params query params map
+	 * @return a list of field names or null if the parameter is missing
+	 */
+	public static List<String> getSelectFromParams(MultivaluedMap<String, String> params) {
+		String select = paramOrDefault(params, "select", null);
+		return StringUtils.isBlank(select) ? null : Arrays.asList(StringUtils.split(select, ","));
+	}
+
 	/**
 	 * A generic JSON response handler.
 	 * @param status status code
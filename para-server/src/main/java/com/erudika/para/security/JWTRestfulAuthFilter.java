@@ -33,6 +33,7 @@ import com.erudika.para.rest.RestUtils;
 import com.erudika.para.security.filters.LdapAuthFilter;
 import com.erudika.para.security.filters.PasswordlessAuthFilter;
 import com.erudika.para.security.filters.SlackAuthFilter;
+import com.erudika.para.utils.AppRegistry;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Utils;
 import com.nimbusds.jwt.SignedJWT;
@@ -147,7 +148,7 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 		if (provider != null && appid != null && token != null) {
 			// don't allow clients to create users on root app unless this is explicitly configured
 			if (!App.isRoot(appid) || Config.getConfigBoolean("clients_can_access_root_app", false)) {
-				App app = Para.getDAO().read(App.id(appid));
+				App app = AppRegistry.getInstance().getApp(appid);
 				if (app != null) {
 					UserAuthentication userAuth = getOrCreateUser(app, provider, token);
 					User user = SecurityUtils.getAuthenticatedUser(userAuth);
@@ -262,7 +263,7 @@ public class JWTRestfulAuthFilter extends GenericFilterBean {
 				SignedJWT jwt = SignedJWT.parse(token.substring(6).trim());
 				String userid = jwt.getJWTClaimsSet().getSubject();
 				String appid = (String) jwt.getJWTClaimsSet().getClaim(Config._APPID);
-				App app = Para.getDAO().read(App.id(appid));
+				App app = AppRegistry.getInstance().getApp(appid);
 				if (app != null) {
 					User user = Para.getDAO().read(app.getAppIdentifier(), userid);
 					if (user != null) {
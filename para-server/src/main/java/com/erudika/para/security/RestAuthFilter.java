@@ -17,11 +17,11 @@
  */
 package com.erudika.para.security;
 
-import com.erudika.para.Para;
 import com.erudika.para.core.App;
 import com.erudika.para.core.User;
 import com.erudika.para.rest.RestUtils;
 import com.erudika.para.rest.Signer;
+import com.erudika.para.utils.AppRegistry;
 import com.erudika.para.utils.BufferedRequestWrapper;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Utils;
@@ -105,7 +105,7 @@ public class RestAuthFilter extends GenericFilterBean implements InitializingBea
 			appid = App.id(Config.getRootAppIdentifier());
 		}
 		if (!StringUtils.isBlank(appid)) {
-			App parentApp = Para.getDAO().read(App.id(appid));
+			App parentApp = AppRegistry.getInstance().getApp(appid);
 			if (hasPermission(parentApp, null, request)) {
 				SecurityContextHolder.getContext().setAuthentication(new AppAuthentication(parentApp));
 				return true;
@@ -145,7 +145,7 @@ public class RestAuthFilter extends GenericFilterBean implements InitializingBea
 				}
 			} else if (user.getActive()) {
 				if (parentApp == null) {
-					parentApp = Para.getDAO().read(App.id(user.getAppid()));
+					parentApp = AppRegistry.getInstance().getApp(user.getAppid());
 				}
 				if (hasPermission(parentApp, user, request)) {
 					return true;
@@ -173,7 +173,7 @@ public class RestAuthFilter extends GenericFilterBean implements InitializingBea
 			return false;
 		}
 
-		App app = Para.getDAO().read(App.id(appid));
+		App app = AppRegistry.getInstance().getApp(appid);
 		Object[] failures = doAppChecks(app, request);
 
 		if (failures == null) {
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.utils;
+
+import com.erudika.para.DestroyListener;
+import com.erudika.para.IOListener;
+import com.erudika.para.InitializeListener;
+import com.erudika.para.Para;
+import com.erudika.para.core.App;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps all active {@link App} objects in memory, so that looking up an app on each API request is a map read
+ * instead of a cache or database read. Resident apps are reloaded in the background every
+ * {@code app_registry.refresh_seconds}, in one batch, and apps which haven't been looked up for
+ * {@code app_registry.idle_seconds} are dropped. Local changes are applied right away - settings are
+ * pushed through the {@link com.erudika.para.AppSettingAddedListener} and
+ * {@link com.erudika.para.AppSettingRemovedListener} hooks and app objects written through the DAO are evicted.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public enum AppRegistry implements InitializeListener, IOListener {
+
+	/**
+	 * Singleton.
+	 */
+	INSTANCE;
+
+	private static final Logger logger = LoggerFactory.getLogger(AppRegistry.class);
+	private static final boolean ENABLED = Config.getConfigBoolean("app_registry.enabled", true);
+	private static final long REFRESH_MS = TimeUnit.SECONDS.toMillis(Config.getConfigInt("app_registry.refresh_seconds", 60));
+	private static final long IDLE_MS = TimeUnit.SECONDS.toMillis(Config.getConfigInt("app_registry.idle_seconds", 3600));
+
+	private final Map<String, Entry> apps = new ConcurrentHashMap<>();
+	private ScheduledFuture<?> refreshTask;
+
+	{
+		App.addAppCreatedListener(app -> {
+			if (app != null && app.getId() != null) {
+				apps.put(app.getId(), new Entry(app));
+			}
+		});
+		App.addAppDeletedListener(app -> {
+			if (app != null && app.getId() != null) {
+				apps.remove(app.getId());
+			}
+		});
+		// only resident apps are updated - the settings of a deleted app are cleared after it's removed
+		App.addAppSettingAddedListener((app, key, value) -> push(app));
+		App.addAppSettingRemovedListener((app, key) -> push(app));
+	}
+
+	/**
+	 * Returns an app from memory, loading it from the DAO only if it isn't resident.
+	 * @param appid the app identifier, with or without the "app:" prefix
+	 * @return the app or null if not found
+	 */
+	public App getApp(String appid) {
+		if (StringUtils.isBlank(appid)) {
+			return null;
+		}
+		String id = App.id(appid);
+		if (!ENABLED) {
+			return Para.getDAO().read(id);
+		}
+		long now = System.currentTimeMillis();
+		Entry entry = apps.get(id);
+		// a resident entry should never get this old, unless background refreshing isn't running
+		if (entry == null || now - entry.loadedAt > 2 * REFRESH_MS) {
+			App app = Para.getDAO().read(id);
+			if (app == null) {
+				apps.remove(id);
+				return null;
+			}
+			entry = new Entry(app);
+			apps.put(id, entry);
+		}
+		entry.lastAccess = now;
+		return entry.app;
+	}
+
+	/**
+	 * Reloads all resident apps from the database with a single batch read and drops idle or deleted apps.
+	 * The apps are removed from the cache first, so that the read doesn't return cached copies.
+	 * @return the number of apps refreshed
+	 */
+	int refresh() {
+		long now = System.currentTimeMillis();
+		List<String> ids = new ArrayList<>(apps.size());
+		for (Map.Entry<String, Entry> e : apps.entrySet()) {
+			if (now - e.getValue().lastAccess > IDLE_MS) {
+				apps.remove(e.getKey(), e.getValue());
+			} else {
+				ids.add(e.getKey());
+			}
+		}
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		Para.getCache().removeAll(Config.getRootAppIdentifier(), ids);
+		Map<String, App> loaded = Para.getDAO().readAll(Config.getRootAppIdentifier(), ids, true);
+		for (String id : ids) {
+			App app = loaded.get(id);
+			if (app == null) {
+				apps.remove(id);
+			} else {
+				apps.computeIfPresent(id, (k, old) -> old.refresh(app));
+			}
+		}
+		return loaded.size();
+	}
+
+	/**
+	 * Removes an app from memory. The next lookup will load it from the DAO.
+	 * @param appid the app identifier
+	 */
+	public void evict(String appid) {
+		if (!StringUtils.isBlank(appid)) {
+			apps.remove(App.id(appid));
+		}
+	}
+
+	/**
+	 * Removes all apps from memory.
+	 */
+	public void clear() {
+		apps.clear();
+	}
+
+	private void push(App app) {
+		if (app != null && app.getId() != null) {
+			apps.computeIfPresent(app.getId(), (k, old) -> old.refresh(app));
+		}
+	}
+
+	private void evictApps(Object arg) {
+		if (arg instanceof App) {
+			evict(((App) arg).getId());
+		} else if (arg instanceof List) {
+			for (Object obj : (List<?>) arg) {
+				if (obj instanceof App) {
+					evict(((App) obj).getId());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void onPreInvoke(Method method, Object[] args) {
+		// noop
+	}
+
+	@Override
+	public void onPostInvoke(Method method, Object[] args, Object result) {
+		// app objects written through the DAO may be partial, so they are reloaded on the next lookup
+		if (method != null && args != null && !method.getName().startsWith("read")) {
+			for (Object arg : args) {
+				evictApps(arg);
+			}
+		}
+	}
+
+	@Override
+	public void onInitialize() {
+		if (ENABLED && refreshTask == null) {
+			refreshTask = Para.getScheduledExecutorService().scheduleWithFixedDelay(() -> {
+				try {
+					refresh();
+				} catch (Exception e) {
+					logger.error("Failed to refresh apps: {}", e.getMessage());
+				}
+			}, REFRESH_MS, REFRESH_MS, TimeUnit.MILLISECONDS);
+			Para.addDestroyListener(new DestroyListener() {
+				public void onDestroy() {
+					refreshTask.cancel(true);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns an instance of this class.
+	 * @return an instance
+	 */
+	public static AppRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * A resident app.
+	 */
+	private static final class Entry {
+
+		private final App app;
+		private final long loadedAt;
+		private volatile long lastAccess;
+
+		Entry(App app) {
+			this.app = app;
+			this.loadedAt = System.currentTimeMillis();
+			this.lastAccess = loadedAt;
+		}
+
+		Entry refresh(App newApp) {
+			Entry e = new Entry(newApp);
+			e.lastAccess = lastAccess;
+			return e;
+		}
+	}
+}
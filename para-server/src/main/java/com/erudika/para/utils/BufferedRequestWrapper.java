@@ -21,6 +21,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
@@ -33,27 +34,48 @@ import org.slf4j.LoggerFactory;
 public class BufferedRequestWrapper extends HttpServletRequestWrapper {
 
 	private ByteArrayInputStream bais;
-	private ByteArrayOutputStream baos;
 	private BufferedServletInputStream bsis;
 	private byte[] buffer;
 
 	/**
-	 * Default constructor.
+	 * Default constructor. Wrapping another {@link BufferedRequestWrapper} shares its buffer instead
+	 * of copying it.
 	 * @param req {@link HttpServletRequest}
 	 * @throws IOException error
 	 */
 	public BufferedRequestWrapper(HttpServletRequest req) throws IOException {
 		super(req);
-		if (req != null) {
-			InputStream is = req.getInputStream();
-			baos = new ByteArrayOutputStream();
+		if (req instanceof BufferedRequestWrapper) {
+			buffer = ((BufferedRequestWrapper) req).buffer;
+		} else if (req != null) {
+			buffer = readBody(req.getInputStream(), req.getContentLength());
+		}
+	}
+
+	/**
+	 * Reads the request body. When the content length is known, and not over the maximum entity size,
+	 * the body is read straight into an array of that size.
+	 */
+	private static byte[] readBody(InputStream is, int contentLength) throws IOException {
+		if (contentLength < 0 || contentLength > Config.MAX_ENTITY_SIZE_BYTES) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			byte[] buf = new byte[1024];
 			int length;
 			while ((length = is.read(buf)) > 0) {
 				baos.write(buf, 0, length);
 			}
-			buffer = baos.toByteArray();
+			return baos.toByteArray();
+		}
+		byte[] body = new byte[contentLength];
+		int offset = 0;
+		while (offset < contentLength) {
+			int length = is.read(body, offset, contentLength - offset);
+			if (length < 0) {
+				return Arrays.copyOf(body, offset);
+			}
+			offset += length;
 		}
+		return body;
 	}
 
 	@Override
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013-2020 Erudika. http://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.Para;
+import com.erudika.para.core.Webhook;
+import com.erudika.para.utils.Config;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates the events for webhooks which have batching enabled ({@link Webhook#getMaxBatchSize()}).
+ * The objects written are collected per webhook and event, and sent as the {@code items} of a single signed
+ * payload once the batch is full or its oldest event has waited for {@link Webhook#getMaxLingerMillis()}.
+ * The owner of a batcher must call {@link #flushAll()} on shutdown, so that pending events aren't lost.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class WebhookBatcher {
+
+	private static final int MAX_BATCH_SIZE = Config.getConfigInt("webhooks.max_batch_size", 1000);
+	private static final int DEFAULT_LINGER_MS = Config.getConfigInt("webhooks.batch_linger_ms", 1000);
+	private static final int MAX_LINGER_MS = 60 * 1000;
+
+	private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+
+	WebhookBatcher() {
+		this(Para.getScheduledExecutorService());
+	}
+
+	/**
+	 * @param scheduler sends the batches which weren't filled in time
+	 */
+	WebhookBatcher(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @param webhook a webhook
+	 * @return true if the events for that webhook should be batched
+	 */
+	static boolean isBatched(Webhook webhook) {
+		return webhook.getMaxBatchSize() != null && webhook.getMaxBatchSize() > 1;
+	}
+
+	/**
+	 * Adds the objects of a write to the batch of a webhook, sending it if it's full.
+	 * @param appid appid
+	 * @param webhook a webhook with batching enabled
+	 * @param event the name of the DAO method
+	 * @param paraObjects a single object or a list of objects
+	 */
+	void add(String appid, Webhook webhook, String event, Object paraObjects) {
+		List<?> items = (paraObjects instanceof List) ? (List<?>) paraObjects : Collections.singletonList(paraObjects);
+		int maxSize = Math.min(webhook.getMaxBatchSize(), MAX_BATCH_SIZE);
+		String key = appid + Config.SEPARATOR + webhook.getId() + Config.SEPARATOR + event;
+		List<List<Object>> full = new ArrayList<>();
+		batches.compute(key, (k, current) -> {
+			Batch batch = (current == null) ? new Batch(appid, event) : current;
+			batch.webhook = webhook;
+			for (Object item : items) {
+				batch.items.add(item);
+				if (batch.items.size() >= maxSize) {
+					full.add(batch.items);
+					batch.items = new ArrayList<>(maxSize);
+				}
+			}
+			if (batch.items.isEmpty()) {
+				if (batch.timer != null) {
+					batch.timer.cancel(false);
+				}
+				return null;
+			}
+			if (batch.timer == null) {
+				batch.timer = scheduler.schedule(() -> flush(k, batch),
+						lingerMillis(webhook), TimeUnit.MILLISECONDS);
+			}
+			return batch;
+		});
+		for (List<Object> objects : full) {
+			send(appid, webhook, event, objects);
+		}
+	}
+
+	/**
+	 * Sends all pending batches.
+	 */
+	void flushAll() {
+		for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+			flush(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void flush(String key, Batch batch) {
+		if (batches.remove(key, batch)) {
+			if (batch.timer != null) {
+				batch.timer.cancel(false);
+			}
+			send(batch.appid, batch.webhook, batch.event, batch.items);
+		}
+	}
+
+	private void send(String appid, Webhook webhook, String event, List<Object> items) {
+		Para.getQueue().push(WebhookUtils.buildWebhookPayload(appid, items, event, webhook));
+	}
+
+	private static long lingerMillis(Webhook webhook) {
+		Integer linger = webhook.getMaxLingerMillis();
+		return (linger == null || linger <= 0) ? DEFAULT_LINGER_MS : Math.min(linger, MAX_LINGER_MS);
+	}
+
+	/**
+	 * The pending events for one webhook and event.
+	 */
+	private static final class Batch {
+
+		private final String appid;
+		private final String event;
+		private Webhook webhook;
+		private List<Object> items = new ArrayList<>();
+		private ScheduledFuture<?> timer;
+
+		Batch(String appid, String event) {
+			this.appid = appid;
+			this.event = event;
+		}
+	}
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2013-2020 Erudika. http://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.utils.Config;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers webhook requests in the background, on a pool of worker threads sharing a pooled, keep-alive HTTP client.
+ * At most {@code webhooks.max_connections_per_host} requests are sent to the same host at once - the rest wait in
+ * a queue for that host, so a slow or dead endpoint only delays its own deliveries.
+ * <br>
+ * Each host has a circuit breaker. After a number of consecutive failures, requests to that host fail right away,
+ * without a connection, until the breaker has been open for a while. Then a single request is let through and
+ * the breaker closes again if it succeeds.
+ * <br>
+ * Requests which can't be sent because the dispatcher is shutting down complete with {@link Result#NOT_SENT},
+ * so they can be queued again instead of being lost.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class WebhookDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+	private final Predicate<HttpPost> sender;
+	private final ExecutorService workers;
+	private final int maxPerHost;
+	private final int maxPendingPerHost;
+	private final int breakerFailures;
+	private final long breakerOpenMillis;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+	/**
+	 * @param http the HTTP client
+	 * @param threads the number of worker threads
+	 * @param maxPerHost the maximum number of concurrent requests to the same host
+	 * @param maxPendingPerHost the maximum number of requests waiting for the same host
+	 * @param breakerFailures the number of consecutive failures which open the circuit breaker of a host
+	 * @param breakerOpenMillis how long the circuit breaker stays open before a request is let through
+	 */
+	WebhookDispatcher(CloseableHttpClient http, int threads, int maxPerHost, int maxPendingPerHost,
+			int breakerFailures, long breakerOpenMillis) {
+		this(request -> send(http, request), threads, maxPerHost, maxPendingPerHost, breakerFailures,
+				breakerOpenMillis);
+	}
+
+	/**
+	 * @param sender sends a request and returns true if the target responded with {@code 200 OK}
+	 * @param threads the number of worker threads
+	 * @param maxPerHost the maximum number of concurrent requests to the same host
+	 * @param maxPendingPerHost the maximum number of requests waiting for the same host
+	 * @param breakerFailures the number of consecutive failures which open the circuit breaker of a host
+	 * @param breakerOpenMillis how long the circuit breaker stays open before a request is let through
+	 */
+	WebhookDispatcher(Predicate<HttpPost> sender, int threads, int maxPerHost, int maxPendingPerHost,
+			int breakerFailures, long breakerOpenMillis) {
+		AtomicInteger count = new AtomicInteger();
+		this.sender = sender;
+		this.maxPerHost = Math.max(1, maxPerHost);
+		this.maxPendingPerHost = maxPendingPerHost;
+		this.breakerFailures = Math.max(1, breakerFailures);
+		this.breakerOpenMillis = breakerOpenMillis;
+		this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			Thread t = new Thread(r, "webhook-dispatcher-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Queues a request for delivery.
+	 * @param request the request
+	 * @param onDone called with the outcome of the request - {@link Result#NOT_SENT} if the circuit breaker
+	 * of the host opened in the meantime or the dispatcher was shut down
+	 * @return false if the request was rejected, because the circuit breaker of the host is open or
+	 * too many requests are waiting for the same host
+	 */
+	boolean dispatch(HttpPost request, Consumer<Result> onDone) {
+		Host host = hosts.computeIfAbsent(URIUtils.extractHost(request.getURI()).toURI(), Host::new);
+		Delivery task = new Delivery(request, onDone);
+		synchronized (host) {
+			if (isOpen(host, System.currentTimeMillis())) {
+				return false;
+			}
+			if (host.active >= maxPerHost) {
+				if (host.pending.size() >= maxPendingPerHost) {
+					return false;
+				}
+				host.pending.add(task);
+				return true;
+			}
+			host.active++;
+		}
+		execute(host, task);
+		return true;
+	}
+
+	/**
+	 * Stops the workers, waiting for a while for the requests in progress to complete.
+	 * Requests which haven't started by then complete with {@link Result#NOT_SENT}.
+	 */
+	void shutdown() {
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(Config.getConfigInt("webhooks.timeout_seconds", 10), TimeUnit.SECONDS)) {
+				notSent(workers.shutdownNow());
+			}
+		} catch (InterruptedException e) {
+			notSent(workers.shutdownNow());
+			Thread.currentThread().interrupt();
+		}
+		for (Host host : hosts.values()) {
+			drain(host);
+		}
+	}
+
+	/**
+	 * Runs a request on a worker thread. If the workers are shut down, the request and all requests waiting
+	 * for the same host complete with {@link Result#NOT_SENT}.
+	 * @param host the host
+	 * @param task the request
+	 */
+	private void execute(Host host, Delivery task) {
+		for (Delivery next = task; next != null; next = next(host)) {
+			try {
+				workers.execute(new Job(host, next));
+				return;
+			} catch (RejectedExecutionException e) {
+				logger.debug("Webhook dispatcher is shut down - {} will be queued again.", next.request.getURI());
+				next.notSent();
+			}
+		}
+	}
+
+	/**
+	 * Takes the next request waiting for a host, or frees a slot for the host if there are none.
+	 * @param host the host
+	 * @return a request or null
+	 */
+	private Delivery next(Host host) {
+		synchronized (host) {
+			Delivery task = host.pending.poll();
+			if (task == null) {
+				host.active = Math.max(0, host.active - 1);
+			}
+			return task;
+		}
+	}
+
+	/**
+	 * Completes the requests waiting for a host with {@link Result#NOT_SENT}.
+	 * @param host the host
+	 */
+	private void drain(Host host) {
+		for (Delivery task = poll(host); task != null; task = poll(host)) {
+			task.notSent();
+		}
+	}
+
+	private Delivery poll(Host host) {
+		synchronized (host) {
+			return host.pending.poll();
+		}
+	}
+
+	/**
+	 * Completes the jobs which never started with {@link Result#NOT_SENT}, along with the requests
+	 * waiting behind them.
+	 * @param jobs the jobs left in the queue of the workers
+	 */
+	private void notSent(List<Runnable> jobs) {
+		for (Runnable job : jobs) {
+			if (job instanceof Job) {
+				Host host = ((Job) job).host;
+				((Job) job).task.notSent();
+				// the slot of the job goes to the requests waiting behind it, then it's freed
+				for (Delivery task = next(host); task != null; task = next(host)) {
+					task.notSent();
+				}
+			}
+		}
+	}
+
+	private boolean isOpen(Host host, long now) {
+		return host.failures >= breakerFailures && (now < host.openUntil || host.probing);
+	}
+
+	private boolean allowRequest(Host host) {
+		synchronized (host) {
+			if (isOpen(host, System.currentTimeMillis())) {
+				return false;
+			}
+			// a half-open breaker lets a single request through
+			host.probing = host.failures >= breakerFailures;
+			return true;
+		}
+	}
+
+	private void recordResult(Host host, boolean ok) {
+		synchronized (host) {
+			host.probing = false;
+			if (ok) {
+				host.failures = 0;
+			} else {
+				host.failures++;
+				if (host.failures >= breakerFailures) {
+					host.openUntil = System.currentTimeMillis() + breakerOpenMillis;
+					logger.warn("Webhook deliveries to {} failed {} times in a row - pausing them for {}ms.",
+							host.name, host.failures, breakerOpenMillis);
+				}
+			}
+		}
+	}
+
+	private boolean send(HttpPost request) {
+		try {
+			return sender.test(request);
+		} catch (RuntimeException e) {
+			logger.info("Webhook not delivered to {}: {}", request.getURI(), e.toString());
+			return false;
+		}
+	}
+
+	private static boolean send(CloseableHttpClient http, HttpPost request) {
+		String targetUrl = request.getURI().toString();
+		try (CloseableHttpResponse resp = http.execute(request)) {
+			// the response must be read fully for the connection to be reused
+			EntityUtils.consumeQuietly(resp.getEntity());
+			if (resp.getStatusLine().getStatusCode() != 200) {
+				logger.info("Webhook delivery failed! {} responded with {} {} instead of 200 OK.", targetUrl,
+						resp.getStatusLine().getStatusCode(), resp.getStatusLine().getReasonPhrase());
+				return false;
+			}
+			logger.debug("Webhook delivered to {} successfully.", targetUrl);
+			return true;
+		} catch (Exception e) {
+			logger.info("Webhook not delivered! {} isn't responding. {}", targetUrl, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * The outcome of a request.
+	 */
+	enum Result {
+		/**
+		 * The target responded with {@code 200 OK}.
+		 */
+		DELIVERED,
+		/**
+		 * The target didn't respond with {@code 200 OK}, or didn't respond at all.
+		 */
+		FAILED,
+		/**
+		 * No connection was made, because the circuit breaker of the host was open.
+		 */
+		NOT_SENT
+	}
+
+	/**
+	 * A request and its callback.
+	 */
+	private static final class Delivery {
+
+		private final HttpPost request;
+		private final Consumer<Result> onDone;
+
+		Delivery(HttpPost request, Consumer<Result> onDone) {
+			this.request = request;
+			this.onDone = onDone;
+		}
+
+		void notSent() {
+			try {
+				onDone.accept(Result.NOT_SENT);
+			} catch (Exception e) {
+				logger.error("Webhook callback failed:", e);
+			}
+		}
+	}
+
+	/**
+	 * Sends a request on a worker thread, then starts the next request waiting for the same host.
+	 */
+	private final class Job implements Runnable {
+
+		private final Host host;
+		private final Delivery task;
+
+		Job(Host host, Delivery task) {
+			this.host = host;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				Result result = Result.NOT_SENT;
+				if (allowRequest(host)) {
+					boolean ok = send(task.request);
+					recordResult(host, ok);
+					result = ok ? Result.DELIVERED : Result.FAILED;
+				}
+				task.onDone.accept(result);
+			} catch (Exception e) {
+				logger.error("Webhook delivery failed:", e);
+			} finally {
+				Delivery next = next(host);
+				if (next != null) {
+					execute(host, next);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The requests for one host.
+	 */
+	private static final class Host {
+
+		private final String name;
+		private final Queue<Delivery> pending = new ArrayDeque<>();
+		private int active;
+		private int failures;
+		private long openUntil;
+		private boolean probing;
+
+		Host(String name) {
+			this.name = name;
+		}
+	}
+}
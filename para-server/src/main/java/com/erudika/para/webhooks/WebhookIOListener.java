@@ -17,83 +17,114 @@
  */
 package com.erudika.para.webhooks;
 
+import com.erudika.para.DestroyListener;
 import com.erudika.para.IOListener;
 import com.erudika.para.Para;
-import com.erudika.para.core.App;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.Sysprop;
 import com.erudika.para.core.Webhook;
-import com.erudika.para.utils.Pager;
 import com.erudika.para.utils.Utils;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import javax.inject.Singleton;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  * Listens for IO events and forwards them to the registered webhooks, via a queue.
+ * Subscribers are looked up in a {@link WebhookIndex}, which is updated as webhook objects are written.
+ * Batched events which are still pending are sent when Para is destroyed.
  * @author Alex Bogdanovski [alex@erudika.com]
  */
 @Singleton
-public class WebhookIOListener implements IOListener {
+public class WebhookIOListener implements IOListener, DestroyListener {
 
 
+	private final WebhookIndex index = new WebhookIndex();
+	private final WebhookBatcher batcher = new WebhookBatcher();
+
 	@Override
 	public void onPreInvoke(Method method, Object[] args) {
 		// noop
 	}
 
+	@Override
+	public void onDestroy() {
+		batcher.flushAll();
+	}
+
 	@Override
 	public void onPostInvoke(Method method, Object[] args, Object result) {
 		if (method != null && !method.getName().startsWith("read")) {
 			Object paraObjects = getObjectsFromArguments(args);
-			// don't process webhooks for operations on webhook objects.
-			if (paraObjects == null || paraObjects instanceof Webhook || (paraObjects instanceof Sysprop &&
-					Utils.type(Webhook.class).equals(((Sysprop) paraObjects).getType()))) {
+			if (paraObjects == null || !(args[0] instanceof String)) {
+				return;
+			}
+			String appid = (String) args[0];
+			// don't process webhooks for operations on webhook objects - update the index instead.
+			List<String> webhookIds = getWebhookIds(paraObjects);
+			if (!webhookIds.isEmpty()) {
+				Para.asyncExecute(() -> updateIndex(appid, method.getName(), webhookIds));
 				return;
 			}
 			Para.asyncExecute(new Runnable() {
 				public void run() {
-					String appid = (String) args[0];
-					Pager p = new Pager(10);
-					p.setSortby("_docid");
-					List<Webhook> webhooks;
-					do {
-						Map<String, Object> terms = new HashMap<>();
-						terms.put(method.getName(), true);
-						terms.put("active", true);
-						webhooks = Para.getSearch().findTerms(appid, Utils.type(Webhook.class), terms, true, p);
-
-						if (!webhooks.isEmpty()) {
-							for (Webhook webhook : webhooks) {
-								if (StringUtils.isBlank(webhook.getTypeFilter()) ||
-										App.ALLOW_ALL.equals(webhook.getTypeFilter()) ||
-												typeFilterMatches(webhook, paraObjects)) {
-									Para.getQueue().push(WebhookUtils.buildWebhookPayload(appid,
-											paraObjects, method.getName(), webhook));
-								}
-							}
+					for (Webhook webhook : index.find(appid, method.getName(), getType(paraObjects))) {
+						if (WebhookBatcher.isBatched(webhook)) {
+							batcher.add(appid, webhook, method.getName(), paraObjects);
+						} else {
+							Para.getQueue().push(WebhookUtils.buildWebhookPayload(appid,
+									paraObjects, method.getName(), webhook));
 						}
-					} while (!webhooks.isEmpty());
+					}
 				}
 
-				private boolean typeFilterMatches(Webhook webhook, Object paraObjects) {
+				private String getType(Object paraObjects) {
 					if (paraObjects instanceof ParaObject) {
-						return webhook.getTypeFilter().equalsIgnoreCase(((ParaObject) paraObjects).getType());
+						return ((ParaObject) paraObjects).getType();
 					} else if (paraObjects instanceof List) {
 						List<?> list = (List) paraObjects;
 						if (!list.isEmpty() && list.get(0) instanceof ParaObject) {
-							return webhook.getTypeFilter().equalsIgnoreCase(((ParaObject) list.get(0)).getType());
+							return ((ParaObject) list.get(0)).getType();
 						}
 					}
-					return false;
+					return null;
 				}
 			});
 		}
 	}
 
+	private void updateIndex(String appid, String method, List<String> webhookIds) {
+		if (method.startsWith("delete")) {
+			for (String id : webhookIds) {
+				index.remove(appid, id);
+			}
+		} else {
+			// written objects may be partial, so the webhooks are read back in full
+			Map<String, ParaObject> webhooks = Para.getDAO().readAll(appid, webhookIds, true);
+			for (String id : webhookIds) {
+				if (webhooks.get(id) instanceof Webhook) {
+					index.put(appid, (Webhook) webhooks.get(id));
+				} else {
+					index.remove(appid, id);
+				}
+			}
+		}
+	}
+
+	private List<String> getWebhookIds(Object paraObjects) {
+		List<?> list = (paraObjects instanceof List) ? (List) paraObjects : Collections.singletonList(paraObjects);
+		List<String> ids = new ArrayList<>();
+		for (Object obj : list) {
+			if (obj instanceof Webhook || (obj instanceof Sysprop &&
+					Utils.type(Webhook.class).equals(((Sysprop) obj).getType()))) {
+				ids.add(((ParaObject) obj).getId());
+			}
+		}
+		return ids;
+	}
+
 	private Object getObjectsFromArguments(Object[] args) {
 		for (Object arg : args) {
 			if (arg != null && arg instanceof ParaObject) {
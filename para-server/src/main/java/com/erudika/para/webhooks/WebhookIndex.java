@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013-2020 Erudika. http://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.Para;
+import com.erudika.para.core.App;
+import com.erudika.para.core.Webhook;
+import com.erudika.para.utils.Config;
+import com.erudika.para.utils.Pager;
+import com.erudika.para.utils.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory index of the active webhooks of each app, grouped by event and type filter, so that finding
+ * the subscribers of a write is a map lookup. The webhooks of an app are loaded from the search index on
+ * the first write and kept up to date as webhook objects are written on this node. Changes made on other
+ * nodes are picked up by reloading the index of an app every {@code webhooks.index_refresh_seconds}.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+final class WebhookIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(WebhookIndex.class);
+	private static final long REFRESH_MS = TimeUnit.SECONDS.toMillis(Config.getConfigInt("webhooks.index_refresh_seconds", 60));
+	private static final String[] EVENTS = {"create", "update", "delete", "createAll", "updateAll", "deleteAll"};
+
+	private final Map<String, AppWebhooks> apps = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the active webhooks subscribed to an event, for objects of a given type.
+	 * @param appid appid
+	 * @param event the name of a DAO method
+	 * @param type the type of the objects written
+	 * @return a list of webhooks, possibly empty
+	 */
+	List<Webhook> find(String appid, String event, String type) {
+		AppWebhooks index = get(appid);
+		if (System.currentTimeMillis() - index.loadedAt > REFRESH_MS && index.refreshing.compareAndSet(false, true)) {
+			Para.asyncExecute(() -> refresh(appid));
+		}
+		Map<String, List<Webhook>> byType = index.byEvent.get(event);
+		if (byType == null) {
+			return Collections.emptyList();
+		}
+		List<Webhook> all = byType.getOrDefault(App.ALLOW_ALL, Collections.emptyList());
+		List<Webhook> typed = StringUtils.isBlank(type) ? Collections.emptyList() :
+				byType.getOrDefault(StringUtils.lowerCase(type), Collections.emptyList());
+		if (typed.isEmpty()) {
+			return all;
+		}
+		List<Webhook> hooks = new ArrayList<>(all.size() + typed.size());
+		hooks.addAll(all);
+		hooks.addAll(typed);
+		return hooks;
+	}
+
+	/**
+	 * Adds or replaces a webhook in the index of its app. Inactive webhooks are removed.
+	 * The index of the app is loaded first, if needed, because the search index may not have the webhook yet.
+	 * @param appid appid
+	 * @param webhook a webhook
+	 */
+	void put(String appid, Webhook webhook) {
+		if (webhook != null && webhook.getId() != null) {
+			get(appid);
+			apps.computeIfPresent(appid, (k, index) -> index.with(webhook.getId(),
+					Boolean.TRUE.equals(webhook.getActive()) ? webhook : null));
+		}
+	}
+
+	/**
+	 * Removes a webhook from the index of its app.
+	 * @param appid appid
+	 * @param id the id of a webhook
+	 */
+	void remove(String appid, String id) {
+		if (id != null) {
+			apps.computeIfPresent(appid, (k, index) -> index.with(id, null));
+		}
+	}
+
+	/**
+	 * Drops the index of an app. It will be reloaded on the next write.
+	 * @param appid appid
+	 */
+	void clear(String appid) {
+		apps.remove(appid);
+	}
+
+	/**
+	 * Returns the index of an app, loading it first if needed. The search runs outside of the map, so it
+	 * doesn't block other apps. If it fails, the app gets an empty index which is reloaded on the next write.
+	 * @param appid appid
+	 * @return the index of the app
+	 */
+	private AppWebhooks get(String appid) {
+		AppWebhooks index = apps.get(appid);
+		if (index == null) {
+			AppWebhooks loaded;
+			try {
+				loaded = new AppWebhooks(search(appid), System.currentTimeMillis());
+			} catch (Exception e) {
+				logger.error("Failed to load the webhooks of app '{}': {}", appid, e.getMessage());
+				loaded = new AppWebhooks(Collections.emptyMap(), 0L);
+			}
+			index = apps.putIfAbsent(appid, loaded);
+			if (index == null) {
+				index = loaded;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Reloads the index of an app in the background. Webhooks written on this node in the meantime are applied
+	 * again on top of the search results. If the search fails, the current index is kept until the next refresh.
+	 * @param appid appid
+	 */
+	void refresh(String appid) {
+		long startedAt = System.currentTimeMillis();
+		Map<String, Webhook> hooks;
+		try {
+			hooks = search(appid);
+		} catch (Exception e) {
+			logger.error("Failed to reload the webhooks of app '{}' - keeping the ones loaded before: {}",
+					appid, e.getMessage());
+			apps.computeIfPresent(appid, (k, index) -> index.reloaded(index.hooks, System.currentTimeMillis()));
+			return;
+		}
+		apps.computeIfPresent(appid, (k, index) -> index.reloaded(hooks, startedAt));
+	}
+
+	private Map<String, Webhook> search(String appid) {
+		Map<String, Webhook> hooks = new LinkedHashMap<>();
+		Pager p = new Pager(100);
+		p.setSortby("_docid");
+		List<Webhook> page;
+		do {
+			page = Para.getSearch().findTerms(appid, Utils.type(Webhook.class),
+					Collections.singletonMap("active", true), true, p);
+			for (Webhook webhook : page) {
+				hooks.put(webhook.getId(), webhook);
+			}
+		} while (!page.isEmpty());
+		logger.debug("Loaded {} active webhooks for app '{}'.", hooks.size(), appid);
+		return hooks;
+	}
+
+	/**
+	 * An immutable snapshot of the active webhooks of an app. Changes create a new snapshot.
+	 * The snapshot also remembers the webhooks written on this node recently - these win over the search results
+	 * for one refresh period, because the search index may not have caught up with them yet.
+	 */
+	private static final class AppWebhooks {
+
+		private final Map<String, Webhook> hooks;
+		private final Map<String, Change> changes;
+		private final Map<String, Map<String, List<Webhook>>> byEvent = new HashMap<>();
+		private final long loadedAt;
+		private final AtomicBoolean refreshing;
+
+		AppWebhooks(Map<String, Webhook> hooks, long loadedAt) {
+			this(hooks, loadedAt, Collections.emptyMap(), new AtomicBoolean());
+		}
+
+		AppWebhooks(Map<String, Webhook> hooks, long loadedAt, Map<String, Change> changes, AtomicBoolean refreshing) {
+			this.hooks = hooks;
+			this.loadedAt = loadedAt;
+			this.changes = changes;
+			this.refreshing = refreshing;
+			for (Webhook webhook : hooks.values()) {
+				String typeFilter = StringUtils.isBlank(webhook.getTypeFilter()) ? App.ALLOW_ALL :
+						StringUtils.lowerCase(webhook.getTypeFilter());
+				for (String event : EVENTS) {
+					if (subscribes(webhook, event)) {
+						byEvent.computeIfAbsent(event, k -> new HashMap<>()).
+								computeIfAbsent(typeFilter, k -> new ArrayList<>()).add(webhook);
+					}
+				}
+			}
+		}
+
+		AppWebhooks with(String id, Webhook webhook) {
+			Map<String, Webhook> copy = new LinkedHashMap<>(hooks);
+			apply(copy, id, webhook);
+			Map<String, Change> changesCopy = new LinkedHashMap<>(changes);
+			changesCopy.put(id, new Change(webhook, System.currentTimeMillis()));
+			return new AppWebhooks(copy, loadedAt, changesCopy, refreshing);
+		}
+
+		AppWebhooks reloaded(Map<String, Webhook> loaded, long loadedAt) {
+			long now = System.currentTimeMillis();
+			Map<String, Webhook> merged = new LinkedHashMap<>(loaded);
+			Map<String, Change> recent = new LinkedHashMap<>();
+			for (Map.Entry<String, Change> change : changes.entrySet()) {
+				if (now - change.getValue().at < REFRESH_MS) {
+					apply(merged, change.getKey(), change.getValue().webhook);
+					recent.put(change.getKey(), change.getValue());
+				}
+			}
+			return new AppWebhooks(merged, loadedAt, recent, new AtomicBoolean());
+		}
+
+		private static void apply(Map<String, Webhook> hooks, String id, Webhook webhook) {
+			if (webhook == null) {
+				hooks.remove(id);
+			} else {
+				hooks.put(id, webhook);
+			}
+		}
+
+		private static boolean subscribes(Webhook webhook, String event) {
+			Boolean flag;
+			switch (event) {
+				case "create":
+					flag = webhook.getCreate();
+					break;
+				case "update":
+					flag = webhook.getUpdate();
+					break;
+				case "delete":
+					flag = webhook.getDelete();
+					break;
+				case "createAll":
+					flag = webhook.getCreateAll();
+					break;
+				case "updateAll":
+					flag = webhook.getUpdateAll();
+					break;
+				case "deleteAll":
+					flag = webhook.getDeleteAll();
+					break;
+				default:
+					flag = null;
+			}
+			return Boolean.TRUE.equals(flag);
+		}
+	}
+
+	/**
+	 * A webhook written on this node, or null if it was deleted or deactivated.
+	 */
+	private static final class Change {
+
+		private final Webhook webhook;
+		private final long at;
+
+		Change(Webhook webhook, long at) {
+			this.webhook = webhook;
+			this.at = at;
+		}
+	}
+}
@@ -17,6 +17,7 @@
  */
 package com.erudika.para.webhooks;
 
+import com.erudika.para.DestroyListener;
 import com.erudika.para.Para;
 import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.Webhook;
@@ -24,19 +25,21 @@ import com.erudika.para.core.utils.ParaObjectUtils;
 import com.erudika.para.utils.Config;
 import com.erudika.para.utils.Utils;
 import com.nimbusds.jose.crypto.impl.HMAC;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.apache.http.HttpHeaders;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.utils.StringUtils;
@@ -49,12 +52,24 @@ public final class WebhookUtils {
 
 	private static final Logger logger = LoggerFactory.getLogger(WebhookUtils.class);
 	private static final int MAX_FAILED_WEBHOOK_ATTEMPTS = Config.getConfigInt("max_failed_webhook_attempts", 10);
+	private static final int MAX_CONNECTIONS_PER_HOST = Config.getConfigInt("webhooks.max_connections_per_host", 4);
+	private static final long RETRY_BASE_MS = Config.getConfigInt("webhooks.retry_base_seconds", 10) * 1000L;
+	private static final long RETRY_MAX_MS = Config.getConfigInt("webhooks.retry_max_seconds", 3600) * 1000L;
+	private static final long REQUEUE_DELAY_MS = Config.getConfigInt("webhooks.breaker_open_seconds", 30) * 1000L;
+	private static final int MAX_QUEUE_DELAY_SEC = 900;
 	private static final CloseableHttpClient HTTP;
+	private static final WebhookDispatcher DISPATCHER;
 
 	static {
-		int timeout = 10 * 1000;
+		int timeout = Config.getConfigInt("webhooks.timeout_seconds", 10) * 1000;
+		int threads = Config.getConfigInt("webhooks.dispatcher_threads", 64);
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(threads);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
 		HTTP = HttpClientBuilder.create().
-				setConnectionReuseStrategy(new NoConnectionReuseStrategy()).
+				setConnectionManager(connectionManager).
+				evictExpiredConnections().
+				evictIdleConnections(30, TimeUnit.SECONDS).
 				setDefaultRequestConfig(RequestConfig.custom().
 						setConnectTimeout(timeout).
 						setConnectionRequestTimeout(timeout).
@@ -62,6 +77,20 @@ public final class WebhookUtils {
 						setSocketTimeout(timeout).
 						build()).
 				build();
+		DISPATCHER = new WebhookDispatcher(HTTP, threads, MAX_CONNECTIONS_PER_HOST,
+				Config.getConfigInt("webhooks.max_pending_per_host", 1000),
+				Config.getConfigInt("webhooks.breaker_failures", 5),
+				REQUEUE_DELAY_MS);
+		Para.addDestroyListener(new DestroyListener() {
+			public void onDestroy() {
+				DISPATCHER.shutdown();
+				try {
+					HTTP.close();
+				} catch (IOException e) {
+					logger.debug("Failed to close the webhooks HTTP client: {}", e.getMessage());
+				}
+			}
+		});
 	}
 
 	/**
@@ -112,16 +141,45 @@ public final class WebhookUtils {
 	}
 
 	/**
-	 * Processes the incoming payload pulled from queue. Sends a POST to {@code targetUrl}.
+	 * Processes the incoming payload pulled from queue. Queues a POST to {@code targetUrl}, which is sent
+	 * in the background. Failed deliveries are pushed back to the queue, to be retried later. A retry which
+	 * isn't due yet goes back to the queue too, with a delivery delay if the queue supports one.
 	 * @param appid appid
 	 * @param id webhook id
 	 * @param parsed payload with metadata
 	 * @return number of processed webhooks 1 or 0
 	 */
 	public static int processWebhookPayload(String appid, String id, Map<String, Object> parsed) {
+		return processWebhookPayload(appid, id, parsed, done -> { });
+	}
+
+	/**
+	 * Processes the incoming payload pulled from queue, like
+	 * {@link #processWebhookPayload(java.lang.String, java.lang.String, java.util.Map)}.
+	 * The message the payload came from must not be acknowledged before {@code onDone} is called, since
+	 * the delivery is only queued in memory until then.
+	 * @param appid appid
+	 * @param id webhook id
+	 * @param parsed payload with metadata
+	 * @param onDone called with true once the payload has been delivered, pushed back to the queue or discarded,
+	 * or with false if it couldn't be pushed back, in which case the message should be delivered again
+	 * @return number of processed webhooks 1 or 0
+	 */
+	public static int processWebhookPayload(String appid, String id, Map<String, Object> parsed,
+			Consumer<Boolean> onDone) {
 		if (!parsed.containsKey("targetUrl") || StringUtils.isBlank(id) || parsed.isEmpty()) {
+			onDone.accept(true);
+			return 0;
+		}
+		long delay = toLong(parsed.get("nextAttemptAt")) - System.currentTimeMillis();
+		if (delay > 0) {
+			onDone.accept(push(id, parsed, delay));
 			return 0;
 		}
+		return deliver(appid, id, parsed, onDone);
+	}
+
+	private static int deliver(String appid, String id, Map<String, Object> parsed, Consumer<Boolean> onDone) {
 		try {
 			boolean urlEncoded = (boolean) parsed.get("urlEncoded");
 			String targetUrl = (String) parsed.get("targetUrl");
@@ -137,46 +195,93 @@ public final class WebhookUtils {
 			} else {
 				postToTarget.setEntity(new StringEntity((String) parsed.get("payload"), "UTF-8"));
 			}
-			boolean ok = false;
-			String status = "";
-			try (CloseableHttpResponse resp1 = HTTP.execute(postToTarget)) {
-				if (resp1 != null && resp1.getStatusLine().getStatusCode() != 200) {
-					status = resp1.getStatusLine().getReasonPhrase();
-					logger.info("Webhook {} delivery failed! {} responded with {} {} instead of 200 OK.", id,
-							targetUrl, resp1.getStatusLine().getStatusCode(), resp1.getStatusLine().getReasonPhrase());
+			boolean queued = DISPATCHER.dispatch(postToTarget, result -> {
+				if (result == WebhookDispatcher.Result.FAILED) {
+					onDone.accept(retryLater(appid, id, parsed));
+				} else if (result == WebhookDispatcher.Result.NOT_SENT) {
+					onDone.accept(requeue(id, parsed));
 				} else {
-					logger.debug("Webhook {} delivered to {} successfully.", id, targetUrl);
-					ok = true;
-				}
-			} catch (Exception e) {
-				logger.info("Webhook not delivered! {} isn't responding. {}", targetUrl, status);
-			} finally {
-				if (!ok) {
-					// count failed delivieries and disable that webhook object after X failed attempts
-					String countId = "failed_webhook_count" + Config.SEPARATOR + id;
-					Integer count = Para.getCache().get(appid, countId);
-					if (count == null) {
-						Para.getCache().put(appid, countId, 1);
-					} else if (count >= (MAX_FAILED_WEBHOOK_ATTEMPTS - 1)) {
-						Webhook hook = Para.getDAO().read(appid, id);
-						if (hook != null) {
-							hook.setActive(false);
-							hook.setTooManyFailures(true);
-							Para.getDAO().update(appid, hook);
-							Para.getCache().remove(appid, countId);
-							logger.info("Webhook {} was disabled - a maximum of {} failed deliveries was reached.",
-									id, MAX_FAILED_WEBHOOK_ATTEMPTS);
-						}
-					} else {
-						Para.getCache().put(appid, countId, ++count);
-					}
+					onDone.accept(true);
 				}
+			});
+			if (!queued) {
+				logger.debug("Webhook {} not sent - deliveries to {} are paused or too many are pending.", id, targetUrl);
+				onDone.accept(requeue(id, parsed));
 			}
 			return 1;
 		} catch (Exception e) {
 			logger.error("Webhook payload was not delivered:", e);
 		}
+		onDone.accept(true);
 		return 0;
 	}
 
+	/**
+	 * Pushes a failed payload back to the queue, with the time of the next attempt. The delay doubles
+	 * with each attempt. The webhook is disabled after {@code max_failed_webhook_attempts} failed attempts.
+	 * @param appid appid
+	 * @param id webhook id
+	 * @param parsed payload with metadata
+	 * @return false if the payload couldn't be pushed back to the queue
+	 */
+	static boolean retryLater(String appid, String id, Map<String, Object> parsed) {
+		int attempt = (int) toLong(parsed.get("attempt")) + 1;
+		if (attempt >= MAX_FAILED_WEBHOOK_ATTEMPTS) {
+			disableWebhook(appid, id);
+			return true;
+		}
+		long delay = retryDelay(attempt);
+		Map<String, Object> retry = new HashMap<>(parsed);
+		retry.put("attempt", attempt);
+		retry.put("nextAttemptAt", System.currentTimeMillis() + delay);
+		return push(id, retry, delay);
+	}
+
+	/**
+	 * Pushes a payload which was never sent back to the queue, because the circuit breaker of its host
+	 * is open or too many requests are pending for that host. This doesn't count as a failed attempt.
+	 * @param id webhook id
+	 * @param parsed payload with metadata
+	 * @return false if the payload couldn't be pushed back to the queue
+	 */
+	static boolean requeue(String id, Map<String, Object> parsed) {
+		Map<String, Object> retry = new HashMap<>(parsed);
+		retry.put("nextAttemptAt", System.currentTimeMillis() + REQUEUE_DELAY_MS);
+		return push(id, retry, REQUEUE_DELAY_MS);
+	}
+
+	private static boolean push(String id, Map<String, Object> payload, long delayMillis) {
+		try {
+			int delaySec = (int) Math.min(MAX_QUEUE_DELAY_SEC, TimeUnit.MILLISECONDS.toSeconds(delayMillis + 999));
+			Para.getQueue().push(ParaObjectUtils.getJsonWriterNoIdent().writeValueAsString(payload), delaySec);
+			return true;
+		} catch (Exception e) {
+			logger.error("Failed to queue webhook {} for another attempt: {}", id, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @param attempt the number of failed attempts so far
+	 * @return the delay before the next attempt in millis
+	 */
+	static long retryDelay(int attempt) {
+		return Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(attempt - 1, 30));
+	}
+
+	private static void disableWebhook(String appid, String id) {
+		Webhook hook = Para.getDAO().read(appid, id);
+		if (hook != null && !Boolean.FALSE.equals(hook.getActive())) {
+			hook.setActive(false);
+			hook.setTooManyFailures(true);
+			Para.getDAO().update(appid, hook);
+			logger.info("Webhook {} was disabled - a maximum of {} failed deliveries was reached.",
+					id, MAX_FAILED_WEBHOOK_ATTEMPTS);
+		}
+	}
+
+	private static long toLong(Object number) {
+		return (number instanceof Number) ? ((Number) number).longValue() : 0L;
+	}
+
 }
@@ -162,9 +162,13 @@ public class AspectsIT {
 		logger.debug("---- cache remove ----");
 		c.remove(s1.getId());
 		c.remove(s2.getId());
-		d.readAll(Arrays.asList(s0.getId(), s1.getId(), s2.getId()), true);
+		map = d.readAll(Arrays.asList(s2.getId(), s0.getId(), s1.getId()), true);
 		assertTrue(c.contains(s1.getId()));
 		assertTrue(c.contains(s2.getId()));
+		// hits and misses are merged in the requested order
+		assertEquals(Arrays.asList(s2.getId(), s0.getId(), s1.getId()), new ArrayList<>(map.keySet()));
+		assertNotNull(map.get(s0.getId()));
+		assertNotNull(map.get(s2.getId()));
 
 		logger.debug("---- delete all ----");
 		d.deleteAll(list);
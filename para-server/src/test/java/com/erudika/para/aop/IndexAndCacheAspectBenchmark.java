@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.aop;
+
+import com.erudika.para.cache.MockCache;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.persistence.DAO;
+import com.erudika.para.persistence.MockDAO;
+import com.erudika.para.utils.Pager;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.matcher.Matchers;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the per-call overhead of {@link IndexAndCacheAspect} by comparing calls to an intercepted
+ * {@link MockDAO} with direct calls. Not a unit test - run it with {@code main()} from the test classpath.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexAndCacheAspectBenchmark {
+
+	static {
+		System.setProperty("para.env", "embedded");
+		System.setProperty("para.print_logo", "false");
+		System.setProperty("para.cache_enabled", "true");
+		System.setProperty("para.search_enabled", "false");
+	}
+
+	private static final String APPID = "bench-app";
+
+	private DAO direct;
+	private DAO intercepted;
+	private Sysprop object;
+	private Pager pager;
+
+	@Setup
+	public void setUp() {
+		direct = new MockDAO();
+		intercepted = Guice.createInjector(new AbstractModule() {
+			protected void configure() {
+				IndexAndCacheAspect aspect = new IndexAndCacheAspect();
+				aspect.setCache(new MockCache());
+				bindInterceptor(Matchers.subclassesOf(DAO.class), Matchers.any(), aspect);
+				bind(DAO.class).to(MockDAO.class);
+			}
+		}).getInstance(DAO.class);
+		object = new Sysprop("bench1");
+		direct.create(APPID, object);
+		intercepted.create(APPID, object);
+		pager = new Pager(1);
+	}
+
+	@Benchmark
+	public ParaObject directRead() {
+		return direct.read(APPID, object.getId());
+	}
+
+	@Benchmark
+	public ParaObject interceptedRead() {
+		return intercepted.read(APPID, object.getId());
+	}
+
+	@Benchmark
+	public List<ParaObject> directReadPage() {
+		pager.setLastKey(null);
+		return direct.readPage(APPID, pager);
+	}
+
+	@Benchmark
+	public List<ParaObject> interceptedReadPage() {
+		pager.setLastKey(null);
+		return intercepted.readPage(APPID, pager);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IndexAndCacheAspectBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.aop;
+
+import com.erudika.para.cache.Cache;
+import com.erudika.para.cache.MockCache;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.persistence.DAO;
+import com.erudika.para.persistence.MockDAO;
+import com.erudika.para.search.MockSearch;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class IndexAndCacheAspectTest {
+
+	private static final String APPID = "aspect-app";
+
+	private String cacheEnabled;
+	private String searchEnabled;
+	private Cache cache;
+	private DAO store;
+	private ProjectingDAO dao;
+	private IndexAndCacheAspect aspect;
+
+	@Before
+	public void setUp() {
+		cacheEnabled = System.getProperty("para.cache_enabled");
+		searchEnabled = System.getProperty("para.search_enabled");
+		System.setProperty("para.cache_enabled", "true");
+		System.setProperty("para.search_enabled", "false");
+		cache = new MockCache();
+		store = new MockDAO();
+		dao = new ProjectingDAO();
+		aspect = new IndexAndCacheAspect();
+		aspect.setCache(cache);
+	}
+
+	@After
+	public void tearDown() {
+		restore("para.cache_enabled", cacheEnabled);
+		restore("para.search_enabled", searchEnabled);
+	}
+
+	@Test
+	public void testProjectedReadAllServesCacheHits() throws Throwable {
+		Sysprop cached = new Sysprop("p1");
+		cached.setName("cached");
+		cache.put(APPID, cached.getId(), cached);
+		Sysprop stored = new Sysprop("p2");
+		stored.setName("stored");
+		store.create(APPID, stored);
+
+		Map<String, ParaObject> results = readAll(Arrays.asList("p1", "p2"), Collections.singletonList("timestamp"));
+		assertEquals(Arrays.asList("p1", "p2"), new ArrayList<>(results.keySet()));
+		// the cached object is returned whole, only the miss is read from the DB
+		assertEquals("cached", results.get("p1").getName());
+		assertNotEquals("stored", results.get("p2").getName());
+		assertEquals(Collections.singletonList(Collections.singletonList("p2")), dao.projectedReads);
+		// the partial object isn't cached
+		assertFalse(cache.contains(APPID, "p2"));
+	}
+
+	@Test
+	public void testUnprojectedReadAllIsCached() throws Throwable {
+		Sysprop stored = new Sysprop("p3");
+		stored.setName("stored");
+		store.create(APPID, stored);
+
+		Map<String, ParaObject> results = readAll(Collections.singletonList("p3"), null);
+		assertEquals("stored", results.get("p3").getName());
+		assertTrue(cache.contains(APPID, "p3"));
+	}
+
+	@Test
+	public void testObjectsWhichFailedToWriteAreSkipped() throws Throwable {
+		System.setProperty("para.search_enabled", "true");
+		RecordingSearch search = new RecordingSearch();
+		aspect.setSearch(search);
+		dao.failedWrites.add("p5");
+		List<ParaObject> objects = new ArrayList<>(Arrays.asList(new Sysprop("p4"), new Sysprop("p5")));
+		invoke(ProjectingDAO.class.getMethod("createAll", String.class, List.class), APPID, objects);
+		assertEquals(Collections.singletonList("p4"), search.indexed);
+		assertTrue(cache.contains(APPID, "p4"));
+		assertFalse(cache.contains(APPID, "p5"));
+
+		// an object which couldn't be deleted stays in the index
+		dao.failedWrites.add("p4");
+		List<ParaObject> deletes = new ArrayList<>(Arrays.asList(new Sysprop("p4"), new Sysprop("p6")));
+		invoke(ProjectingDAO.class.getMethod("deleteAll", String.class, List.class), APPID, deletes);
+		assertEquals(Collections.singletonList("p6"), search.unindexed);
+	}
+
+	@Test
+	public void testConcurrentMissesReadOnce() throws Throwable {
+		Sysprop stored = new Sysprop("p7");
+		stored.setName("stored");
+		store.create(APPID, stored);
+		dao.readGate = new CountDownLatch(1);
+
+		List<Object> results = readConcurrently("p7", 4);
+		assertEquals(1, dao.reads.get());
+		for (Object result : results) {
+			assertEquals("stored", ((ParaObject) result).getName());
+		}
+		assertTrue(cache.contains(APPID, "p7"));
+	}
+
+	@Test
+	public void testFailedLoadIsPassedToAllWaiters() throws Throwable {
+		dao.readGate = new CountDownLatch(1);
+		dao.readError = new IllegalStateException("read failed");
+
+		List<Object> results = readConcurrently("p8", 4);
+		assertEquals(1, dao.reads.get());
+		// every caller gets the same error
+		assertTrue(results.get(0) instanceof Throwable);
+		for (Object result : results) {
+			assertSame(results.get(0), result);
+		}
+
+		// the failed load isn't remembered, the next miss reads from the DB again
+		dao.readError = null;
+		store.create(APPID, new Sysprop("p8"));
+		Method read = ProjectingDAO.class.getMethod("read", String.class, String.class);
+		assertEquals("p8", ((ParaObject) invoke(read, APPID, "p8")).getId());
+		assertEquals(2, dao.reads.get());
+	}
+
+	/**
+	 * Reads the same object from several threads. The DB read of the first thread is held until all the others
+	 * are waiting for it.
+	 * @return the object or the error returned to each thread
+	 */
+	private List<Object> readConcurrently(String id, int threads) throws Exception {
+		Method read = ProjectingDAO.class.getMethod("read", String.class, String.class);
+		List<Object> results = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> readers = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			readers.add(new Thread(() -> {
+				try {
+					results.add(invoke(read, APPID, id));
+				} catch (Throwable t) {
+					results.add(t);
+				}
+			}));
+		}
+		readers.get(0).start();
+		assertTrue(dao.readStarted.await(5, TimeUnit.SECONDS));
+		for (Thread reader : readers.subList(1, threads)) {
+			reader.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (reader.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(Thread.State.WAITING, reader.getState());
+		}
+		dao.readGate.countDown();
+		for (Thread reader : readers) {
+			reader.join(5000);
+		}
+		assertEquals(threads, results.size());
+		return results;
+	}
+
+	/**
+	 * Calls the projected readAll() through the aspect, as Guice would.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, ParaObject> readAll(List<String> keys, List<String> fields) throws Throwable {
+		Method method = ProjectingDAO.class.getMethod("readAll", String.class, List.class, List.class);
+		return (Map<String, ParaObject>) invoke(method, APPID, keys, fields);
+	}
+
+	/**
+	 * Calls a DAO method through the aspect, as Guice would.
+	 */
+	private Object invoke(Method method, Object... args) throws Throwable {
+		return aspect.invoke(new MethodInvocation() {
+			public Method getMethod() {
+				return method;
+			}
+
+			public Object[] getArguments() {
+				return args;
+			}
+
+			public Object proceed() throws Throwable {
+				return method.invoke(dao, args);
+			}
+
+			public Object getThis() {
+				return dao;
+			}
+
+			public AccessibleObject getStaticPart() {
+				return method;
+			}
+		});
+	}
+
+	private static void restore(String key, String value) {
+		if (value == null) {
+			System.clearProperty(key);
+		} else {
+			System.setProperty(key, value);
+		}
+	}
+
+	/**
+	 * Returns copies with only the id and type set when fields are selected. Objects with ids in
+	 * {@code failedWrites} aren't created and are marked with version -1, like a failed batch write.
+	 */
+	public static class ProjectingDAO extends MockDAO {
+
+		private final DAO store = new MockDAO();
+		private final List<List<String>> projectedReads = new ArrayList<>();
+		private final Set<String> failedWrites = new HashSet<>();
+		private final AtomicInteger reads = new AtomicInteger();
+		private final CountDownLatch readStarted = new CountDownLatch(1);
+		private volatile CountDownLatch readGate;
+		private volatile RuntimeException readError;
+
+		@Override
+		public <P extends ParaObject> P read(String appid, String key) {
+			reads.incrementAndGet();
+			readStarted.countDown();
+			if (readGate != null) {
+				try {
+					readGate.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (readError != null) {
+				throw readError;
+			}
+			return super.read(appid, key);
+		}
+
+		@Override
+		public <P extends ParaObject> void createAll(String appid, List<P> objects) {
+			super.createAll(appid, written(objects));
+		}
+
+		@Override
+		public <P extends ParaObject> void deleteAll(String appid, List<P> objects) {
+			super.deleteAll(appid, written(objects));
+		}
+
+		private <P extends ParaObject> List<P> written(List<P> objects) {
+			List<P> written = new ArrayList<>();
+			for (P object : objects) {
+				if (failedWrites.contains(object.getId())) {
+					object.setVersion(-1L);
+				} else {
+					written.add(object);
+				}
+			}
+			return written;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <P extends ParaObject> Map<String, P> readAll(String appid, List<String> keys, List<String> fields) {
+			if (fields == null || fields.isEmpty()) {
+				return store.readAll(appid, keys, true);
+			}
+			projectedReads.add(new ArrayList<>(keys));
+			Map<String, P> results = new LinkedHashMap<>();
+			for (Map.Entry<String, ParaObject> entry : store.readAll(appid, keys, true).entrySet()) {
+				Sysprop partial = new Sysprop(entry.getKey());
+				partial.setType(entry.getValue().getType());
+				results.put(entry.getKey(), (P) partial);
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Records the ids of indexed and unindexed objects.
+	 */
+	public static class RecordingSearch extends MockSearch {
+
+		private final List<String> indexed = new ArrayList<>();
+		private final List<String> unindexed = new ArrayList<>();
+
+		@Override
+		public <P extends ParaObject> void indexAll(String appid, List<P> objects) {
+			objects.forEach(o -> indexed.add(o.getId()));
+		}
+
+		@Override
+		public <P extends ParaObject> void unindexAll(String appid, List<P> objects) {
+			objects.forEach(o -> unindexed.add(o.getId()));
+		}
+	}
+}
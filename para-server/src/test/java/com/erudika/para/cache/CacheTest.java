@@ -19,6 +19,7 @@ package com.erudika.para.cache;
 
 import com.erudika.para.core.User;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Before;
@@ -152,6 +153,10 @@ public abstract class CacheTest {
 		c.put("456", "456");
 		map = c.getAll(list);
 		assertEquals(2, map.size());
+		// the list of ids is not modified
+		assertEquals(5, list.size());
+		map = c.getAll(Arrays.asList("456", "123"));
+		assertEquals(Arrays.asList("456", "123"), new ArrayList<>(map.keySet()));
 	}
 
 	@Test
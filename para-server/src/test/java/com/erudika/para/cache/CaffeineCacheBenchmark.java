@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.core.Sysprop;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the object and serialized value modes of {@link CaffeineCache}. Read latency percentiles (p99 included)
+ * are reported by JMH and the heap used by the cached objects is printed after setup.
+ * Not a unit test - run it with {@code main()} from the test classpath.
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaffeineCacheBenchmark {
+
+	private static final String APPID = "bench-app";
+	private static final int OBJECTS = 10000;
+	private static final int PROPERTIES = 50;
+
+	@Param({"false", "true"})
+	private boolean serialized;
+
+	private CaffeineCache cache;
+
+	@Setup
+	public void setUp() {
+		long heapBefore = usedHeap();
+		cache = new CaffeineCache(appid -> Caffeine.newBuilder()
+				.maximumWeight(serialized ? Long.MAX_VALUE : OBJECTS)
+				.weigher((k, v) -> serialized ? CaffeineCache.weigh(v) : 1)
+				.build(), serialized);
+		for (int i = 0; i < OBJECTS; i++) {
+			Sysprop s = new Sysprop("obj" + i);
+			s.setName("Object " + i);
+			s.setTimestamp(System.currentTimeMillis());
+			for (int j = 0; j < PROPERTIES; j++) {
+				s.addProperty("prop" + j, "value of property " + j + " for object " + i);
+			}
+			cache.put(APPID, s.getId(), s);
+		}
+		System.out.printf("%nserialized=%s: %d objects take ~%d KB of heap%n", serialized, OBJECTS,
+				(usedHeap() - heapBefore) / 1024);
+	}
+
+	@Benchmark
+	public Object get() {
+		return cache.get(APPID, "obj" + ThreadLocalRandom.current().nextInt(OBJECTS));
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime rt = Runtime.getRuntime();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CaffeineCacheBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -17,11 +17,19 @@
  */
 package com.erudika.para.cache;
 
+import com.erudika.para.core.Sysprop;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 /**
@@ -54,7 +62,7 @@ public class CaffeineCacheTest extends CacheTest {
 				.maximumSize(10)
 				.build();
 
-		CaffeineCache cache = new CaffeineCache(caffeine);
+		CaffeineCache cache = new CaffeineCache(appid -> caffeine);
 		cache.put("app", "exp1", "w", 10L);
 		cache.put("app", "exp2", "x", 20L);
 		cache.put("app", "exp3", "y", 30L);
@@ -96,4 +104,191 @@ public class CaffeineCacheTest extends CacheTest {
 		assertNull(cache.get("app", "exp4"));
 	}
 
+	@Test
+	public void testAppNamespaces() {
+		CaffeineCache cache = new CaffeineCache(appid -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.maximumSize(10)
+				.build());
+		cache.put("app2", "obj", "x");
+		for (int i = 0; i < 100; i++) {
+			cache.put("app1", "obj" + i, "y");
+		}
+		// a busy app doesn't evict the objects of another app
+		assertNotNull(cache.get("app2", "obj"));
+
+		cache.put("app1", "obj", "z");
+		cache.removeAll("app1");
+		assertNull(cache.get("app1", "obj"));
+		assertNotNull(cache.get("app2", "obj"));
+	}
+
+	@Test
+	public void testSharedSizeLimit() {
+		CaffeineCache cache = new CaffeineCache((appid, listener) -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.maximumSize(8)
+				.build(), false, 10, 8, 60, 0);
+		for (int i = 0; i < 20; i++) {
+			cache.put("app1", "obj" + i, "x");
+		}
+		// one app is limited by the size per app
+		assertEquals(8, cache.getEstimatedSize("app1"));
+
+		cache.put("app2", "obj", "y");
+		// two apps share the total size
+		assertEquals(5, cache.getEstimatedSize("app1"));
+		assertNotNull(cache.get("app2", "obj"));
+		assertTrue(cache.getEstimatedSize(null) <= 10);
+
+		// the share of a dropped app goes back to the others
+		cache.removeAll("app2");
+		for (int i = 0; i < 20; i++) {
+			cache.put("app1", "obj" + i, "x");
+		}
+		assertEquals(8, cache.getEstimatedSize("app1"));
+	}
+
+	@Test
+	public void testSizeLimitFollowsReads() {
+		CaffeineCache cache = new CaffeineCache((appid, listener) -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.recordStats()
+				.maximumSize(100)
+				.build(), false, 100, 100, 60, 0);
+		for (int i = 0; i < 10; i++) {
+			cache.put("app" + i, "obj", "x");
+		}
+		for (int i = 0; i < 100; i++) {
+			cache.get("app0", "obj");
+		}
+		for (int i = 0; i < 100; i++) {
+			cache.put("app0", "obj" + i, "x");
+			cache.put("app1", "obj" + i, "x");
+		}
+		// every app gets 5 objects, the busy one also gets most of the rest
+		assertTrue(cache.getEstimatedSize("app0") > 40);
+		assertTrue(cache.getEstimatedSize("app1") < 10);
+		assertTrue(cache.getEstimatedSize(null) <= 100);
+	}
+
+	@Test
+	public void testRebalancingIsDeferred() {
+		CaffeineCache cache = new CaffeineCache((appid, listener) -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.maximumSize(10)
+				.build(), false, 10, 10, 60, 3600);
+		cache.put("app1", "obj", "x");
+		cache.put("app2", "obj", "x");
+		for (int i = 0; i < 20; i++) {
+			cache.put("app1", "obj" + i, "x");
+		}
+		// the first app keeps its limit until the next rebalancing, the new one gets an equal share
+		assertEquals(10, cache.getEstimatedSize("app1"));
+		for (int i = 0; i < 20; i++) {
+			cache.put("app2", "obj" + i, "x");
+		}
+		assertEquals(5, cache.getEstimatedSize("app2"));
+	}
+
+	@Test
+	public void testIdleNamespacesAreDropped() {
+		CaffeineCache cache = new CaffeineCache((appid, listener) -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.recordStats()
+				.build(), false, 0, 0, 0, 0);
+		cache.put("app1", "obj", "x");
+		assertNull(cache.get("app1", "obj"));
+		assertEquals(0, cache.getEstimatedSize(null));
+	}
+
+	@Test
+	public void testExpirationPerApp() {
+		System.setProperty("para.caffeine.app_evict_after_minutes.ttlapp", "5");
+		try {
+			assertEquals(300, CaffeineCache.expireAfterSeconds("ttlapp"));
+			assertEquals(600, CaffeineCache.expireAfterSeconds("otherapp"));
+		} finally {
+			System.clearProperty("para.caffeine.app_evict_after_minutes.ttlapp");
+		}
+	}
+
+	@Test
+	public void testStats() {
+		CaffeineCache cache = new CaffeineCache(100, 60);
+		cache.put("app1", "obj1", "x");
+		cache.put("app2", "obj2", "y");
+		assertNotNull(cache.get("app1", "obj1"));
+		assertNull(cache.get("app1", "obj2"));
+		assertNotNull(cache.get("app2", "obj2"));
+
+		assertEquals(1, cache.getStats("app1").hitCount());
+		assertEquals(1, cache.getStats("app1").missCount());
+		assertEquals(2, cache.getStats(null).hitCount());
+		assertEquals(1, cache.getEstimatedSize("app1"));
+		assertEquals(2, cache.getEstimatedSize(null));
+		assertEquals(0, cache.getEvictionCount("app1", RemovalCause.SIZE));
+
+		// the statistics of a dropped namespace only count towards the totals
+		cache.removeAll("app1");
+		assertEquals(0, cache.getEstimatedSize("app1"));
+		assertEquals(0, cache.getStats("app1").hitCount());
+		assertEquals(2, cache.getStats(null).hitCount());
+	}
+
+	@Test
+	public void testSerializedValues() {
+		CaffeineCache cache = new CaffeineCache(appid -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.maximumWeight(1024 * 1024)
+				.weigher((k, v) -> CaffeineCache.weigh(v))
+				.build(), true);
+		Sysprop s = new Sysprop("ser1");
+		s.setName("serialized");
+		s.setTags(Arrays.asList("a", "b"));
+		s.addProperty("nested", Collections.singletonMap("key", "value"));
+		cache.put("app", s.getId(), s);
+		cache.put("app", "str", "plain");
+
+		Sysprop cached = cache.get("app", s.getId());
+		assertNotNull(cached);
+		assertNotSame(s, cached);
+		assertEquals(s.getName(), cached.getName());
+		assertEquals(s.getTags(), cached.getTags());
+		assertEquals(s.getProperty("nested"), cached.getProperty("nested"));
+		assertEquals("plain", cache.get("app", "str"));
+		assertEquals(2, cache.getAll("app", Arrays.asList(s.getId(), "str")).size());
+	}
+
+	@Test
+	public void testUndecodableValuesAreNotCached() {
+		CaffeineCache cache = new CaffeineCache(appid -> Caffeine.newBuilder()
+				.executor(Runnable::run)
+				.maximumWeight(1024 * 1024)
+				.weigher((k, v) -> CaffeineCache.weigh(v))
+				.build(), true);
+		cache.put("app", "bad1", new Immutable("x"));
+		cache.putAll("app", Collections.singletonMap("bad2", new Immutable("y")));
+		cache.put("app", "good", Collections.singletonMap("key", "value"));
+		assertNull(cache.get("app", "bad1"));
+		assertNull(cache.get("app", "bad2"));
+		assertEquals(1, cache.getEstimatedSize("app"));
+		assertEquals("value", cache.<Map<String, String>>get("app", "good").get("key"));
+	}
+
+	/**
+	 * Serializable to JSON but can't be read back without a default constructor.
+	 */
+	public static class Immutable {
+
+		private final String value;
+
+		public Immutable(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.cache;
+
+import com.erudika.para.queue.LocalQueue;
+import com.erudika.para.queue.MockQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class TieredCacheTest extends CacheTest {
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	public TieredCacheTest() {
+		super(new TieredCache(new CaffeineCache(), new MockCache(), null));
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testInvalidationsAcrossNodes() {
+		MockCache l2 = new MockCache();
+		MockQueue inbox1 = new MockQueue();
+		MockQueue inbox2 = new MockQueue();
+		TieredCache node1 = new TieredCache(new CaffeineCache(), l2, new BroadcastQueue(inbox1, inbox1, inbox2),
+				scheduler);
+		TieredCache node2 = new TieredCache(new CaffeineCache(), l2, new BroadcastQueue(inbox2, inbox1, inbox2),
+				scheduler);
+
+		node1.put("app", "obj1", "v1");
+		assertEquals("v1", node2.get("app", "obj1")); // loaded from L2 into the L1 of node2
+		assertTrue(StringUtils.isBlank(inbox1.pull())); // puts and read-through fills are not broadcast
+		assertTrue(StringUtils.isBlank(inbox2.pull()));
+
+		node1.put("app", "obj1", "v2");
+		assertEquals("v1", node2.get("app", "obj1"));
+		node1.publishInvalidation("app", Collections.singletonList("obj1"));
+		node2.processInvalidations();
+		assertEquals("v2", node2.get("app", "obj1"));
+
+		node1.remove("app", "obj1");
+		node2.processInvalidations();
+		assertNull(node2.get("app", "obj1"));
+
+		node2.putAll("app", Collections.singletonMap("obj2", "v3"));
+		assertEquals("v3", node1.getAll("app", Arrays.asList("obj2")).get("obj2"));
+		node2.removeAll("app");
+		node1.processInvalidations();
+		assertNull(node1.get("app", "obj2"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPointToPointQueueRejected() {
+		new TieredCache(new CaffeineCache(), new MockCache(), new LocalQueue());
+	}
+
+	/**
+	 * Delivers each message to the inboxes of all nodes.
+	 */
+	private static class BroadcastQueue extends MockQueue {
+
+		private final MockQueue inbox;
+		private final List<MockQueue> all;
+
+		BroadcastQueue(MockQueue inbox, MockQueue... all) {
+			this.inbox = inbox;
+			this.all = Arrays.asList(all);
+		}
+
+		@Override
+		public String pull() {
+			return inbox.pull();
+		}
+
+		@Override
+		public void push(String task) {
+			all.forEach(q -> q.push(task));
+		}
+	}
+}
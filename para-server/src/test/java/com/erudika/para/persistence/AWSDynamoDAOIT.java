@@ -24,7 +24,10 @@ import com.erudika.para.utils.Pager;
 import com.erudika.para.utils.Utils;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -250,6 +253,61 @@ public class AWSDynamoDAOIT extends DAOTest {
 		assertEquals(1, dao().readPage(app4.getAppIdentifier(), null).size());
 	}
 
+	@Test
+	public void testLargeBatchWrites() {
+		ArrayList<Sysprop> list = new ArrayList<>();
+		ArrayList<String> ids = new ArrayList<>();
+		for (int i = 0; i < 160; i++) {
+			Sysprop s = new Sysprop("large-batch-" + i);
+			s.setName("Batch object " + i);
+			list.add(s);
+			ids.add(s.getId());
+		}
+		dao().createAll(appid1, list);
+		Map<String, Sysprop> res = dao().readAll(appid1, ids, true);
+		assertEquals(list.size(), res.size());
+		for (Sysprop s : list) {
+			assertNotNull(res.get(s.getId()));
+			assertEquals(s.getName(), res.get(s.getId()).getName());
+		}
+
+		dao().deleteAll(appid1, list);
+		res = dao().readAll(appid1, ids, true);
+		for (String id : ids) {
+			assertNull(res.get(id));
+		}
+	}
+
+	@Test
+	public void testParallelScan() {
+		String appid = "scan-app";
+		AWSDynamoUtils.createTable(appid);
+		ArrayList<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 57; i++) {
+			list.add(new Sysprop("scan-" + i));
+		}
+		dao().createAll(appid, list);
+
+		Set<String> ids = new HashSet<>();
+		Pager pager = new Pager(5);
+		// a cursor with 4 unstarted segments starts a segmented scan
+		pager.setLastKey(AWSDynamoUtils.toSegmentCursor(new String[] {"", "", "", ""}));
+		List<Sysprop> page = dao().readPage(appid, pager);
+		while (!page.isEmpty()) {
+			page.forEach(s -> ids.add(s.getId()));
+			assertTrue(AWSDynamoUtils.isSegmentCursor(pager.getLastKey()));
+			page = dao().readPage(appid, pager);
+		}
+		assertEquals(57, ids.size());
+		// resuming a finished scan reads nothing
+		assertTrue(dao().readPage(appid, pager).isEmpty());
+
+		String[] cursor = new String[] {"", "key1", null};
+		String[] parsed = AWSDynamoUtils.parseSegmentCursor(AWSDynamoUtils.toSegmentCursor(cursor), 4);
+		assertEquals(Arrays.asList(cursor), Arrays.asList(parsed));
+		AWSDynamoUtils.deleteTable(appid);
+	}
+
 	@Test
 	public void testReadAllPartial() {
 		Sysprop s1 = new Sysprop("read-partially1");
@@ -269,6 +327,26 @@ public class AWSDynamoDAOIT extends DAOTest {
 		dao().deleteAll(ROOT_APP_NAME, Arrays.asList(s1, s2));
 	}
 
+	@Test
+	public void testReadAllProjected() {
+		Sysprop s1 = new Sysprop("read-projected1");
+		s1.setType("customtype");
+		s1.setName("projected");
+		s1.setTags(Arrays.asList("tag1", "tag2"));
+		dao().create(ROOT_APP_NAME, s1);
+
+		Map<String, Sysprop> res = dao().readAll(ROOT_APP_NAME, Arrays.asList(s1.getId()), Arrays.asList("name"));
+		assertNotNull(res.get(s1.getId()));
+		assertEquals(s1.getType(), res.get(s1.getId()).getType());
+		assertEquals(s1.getName(), res.get(s1.getId()).getName());
+		assertNull(res.get(s1.getId()).getTags());
+		assertNull(res.get(s1.getId()).getTimestamp());
+
+		res = dao().readAll(ROOT_APP_NAME, Arrays.asList(s1.getId()), (List<String>) null);
+		assertEquals(s1.getTags(), res.get(s1.getId()).getTags());
+		dao().delete(ROOT_APP_NAME, s1);
+	}
+
 	@Test
 	public void testOptimisticLockingOnUpdate() {
 		Sysprop s1 = new Sysprop("conditional-update1");
@@ -298,4 +376,31 @@ public class AWSDynamoDAOIT extends DAOTest {
 		Sysprop sr4 = dao().read(s1.getId());
 		assertEquals("Disabled", sr4.getName());
 	}
+
+	@Test
+	public void testOptimisticLockingOnBatchUpdate() {
+		ArrayList<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			Sysprop s = new Sysprop("conditional-batch-update" + i);
+			s.setVersion(1L);
+			list.add(s);
+		}
+		dao().createAll(list);
+		Sysprop stale = dao().read(list.get(0).getId());
+		stale.setName("Updated");
+		dao().update(stale);
+		assertEquals(Long.valueOf(2L), stale.getVersion());
+
+		for (Sysprop s : list) {
+			s.setName("Batch");
+		}
+		dao().updateAll(list);
+		assertEquals(Long.valueOf(-1L), list.get(0).getVersion()); // failed update - stale version
+		for (int i = 1; i < list.size(); i++) {
+			assertEquals(Long.valueOf(2L), list.get(i).getVersion());
+			assertEquals("Batch", dao().read(list.get(i).getId()).getName());
+		}
+		assertEquals("Updated", dao().read(stale.getId()).getName());
+		dao().deleteAll(list);
+	}
 }
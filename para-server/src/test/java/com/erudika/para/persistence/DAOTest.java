@@ -18,6 +18,7 @@
 package com.erudika.para.persistence;
 
 import com.erudika.para.core.App;
+import com.erudika.para.core.ParaObject;
 import com.erudika.para.core.Sysprop;
 import com.erudika.para.core.Tag;
 import com.erudika.para.core.User;
@@ -28,6 +29,8 @@ import com.erudika.para.utils.Utils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -326,4 +329,22 @@ public abstract class DAOTest {
 		assertTrue(dao.readPage(appid3, p).isEmpty());  // end
 		assertEquals(22, p.getCount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testReadAllStream() {
+		ArrayList<Sysprop> list = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			list.add(new Sysprop("stream_" + i));
+		}
+		dao.createAll(appid2, list);
+
+		assertEquals(0, dao.readAllStream(null, null).count());
+		Pager p = new Pager(7);
+		Set<String> ids = dao.readAllStream(appid2, p).map(ParaObject::getId).collect(Collectors.toSet());
+		for (Sysprop s : list) {
+			assertTrue(ids.contains(s.getId()));
+		}
+		assertEquals(ids.size(), p.getCount());
+		dao.deleteAll(appid2, list);
+	}
+}
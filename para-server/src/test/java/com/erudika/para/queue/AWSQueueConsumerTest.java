@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class AWSQueueConsumerTest {
+
+	private final FakeSqsClient sqs = new FakeSqsClient();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private AWSQueueConsumer consumer;
+
+	@After
+	public void tearDown() {
+		if (consumer != null) {
+			consumer.stop();
+		}
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testProcessedBatchIsDeleted() {
+		sqs.responses.add(messages(1, 3));
+		consumer = new AWSQueueConsumer("queue", sqs, scheduler);
+		consumer.start();
+
+		List<String> batch = consumer.pull(10);
+		assertEquals(Arrays.asList("m1", "m2", "m3"), batch);
+		assertTrue(sqs.deleted.isEmpty());
+		consumer.processed(batch, true);
+		assertEquals(Arrays.asList("r1", "r2", "r3"), sqs.deleted);
+	}
+
+	@Test
+	public void testFailedBatchIsNotDeleted() {
+		sqs.responses.add(messages(1, 2));
+		consumer = new AWSQueueConsumer("queue", sqs, scheduler);
+		consumer.start();
+
+		List<String> batch = consumer.pull(10);
+		assertEquals(Arrays.asList("m1", "m2"), batch);
+		consumer.processed(batch, false);
+		// the messages become visible again once their visibility timeout expires
+		assertTrue(sqs.deleted.isEmpty());
+		assertTrue(sqs.visibility.isEmpty());
+		// lists which weren't pulled from the consumer are ignored
+		consumer.processed(new ArrayList<>(batch), true);
+		assertTrue(sqs.deleted.isEmpty());
+	}
+
+	@Test
+	public void testDeletesAreBatched() {
+		sqs.responses.add(messages(1, 10));
+		sqs.responses.add(messages(11, 10));
+		consumer = new AWSQueueConsumer("queue", sqs, scheduler);
+		consumer.start();
+
+		List<String> batch = consumer.pull(15);
+		assertEquals(15, batch.size());
+		consumer.processed(batch, true);
+		assertEquals(2, sqs.deleteRequests);
+		assertEquals(15, sqs.deleted.size());
+		assertEquals("r15", sqs.deleted.get(14));
+	}
+
+	@Test
+	public void testStopReleasesBufferedMessages() {
+		sqs.responses.add(messages(1, 10));
+		sqs.responses.add(messages(11, 5));
+		consumer = new AWSQueueConsumer("queue", sqs, scheduler);
+		consumer.start();
+
+		List<String> batch = consumer.pull(10);
+		assertEquals(10, batch.size());
+		consumer.stop();
+		// the messages which were never pulled are made visible again right away
+		assertEquals(Arrays.asList("r11:0", "r12:0", "r13:0", "r14:0", "r15:0"), sqs.visibility);
+
+		// and so are the messages received after stopping
+		sqs.visibility.clear();
+		sqs.pending.get(0).complete(ReceiveMessageResponse.builder().messages(messages(16, 1)).build());
+		assertEquals(Collections.singletonList("r16:0"), sqs.visibility);
+		// the batch in progress can still be acknowledged
+		consumer.processed(batch, true);
+		assertEquals(10, sqs.deleted.size());
+		consumer = null;
+	}
+
+	private static List<Message> messages(int from, int count) {
+		List<Message> messages = new ArrayList<>(count);
+		for (int i = from; i < from + count; i++) {
+			messages.add(Message.builder().messageId("id" + i).receiptHandle("r" + i).body("m" + i).build());
+		}
+		return messages;
+	}
+
+	/**
+	 * Answers receive requests with the given responses, then leaves them outstanding, like a long poll
+	 * on an empty queue. Requests to delete messages or change their visibility complete right away.
+	 */
+	static class FakeSqsClient implements SqsAsyncClient {
+
+		private final List<List<Message>> responses = new ArrayList<>();
+		private final List<CompletableFuture<ReceiveMessageResponse>> pending = new ArrayList<>();
+		private final List<String> deleted = Collections.synchronizedList(new ArrayList<>());
+		private final List<String> visibility = Collections.synchronizedList(new ArrayList<>());
+		private int deleteRequests;
+
+		@Override
+		public synchronized CompletableFuture<ReceiveMessageResponse> receiveMessage(ReceiveMessageRequest req) {
+			if (responses.isEmpty()) {
+				CompletableFuture<ReceiveMessageResponse> future = new CompletableFuture<>();
+				pending.add(future);
+				return future;
+			}
+			return CompletableFuture.completedFuture(ReceiveMessageResponse.builder().
+					messages(responses.remove(0)).build());
+		}
+
+		@Override
+		public synchronized CompletableFuture<DeleteMessageBatchResponse> deleteMessageBatch(
+				DeleteMessageBatchRequest req) {
+			deleteRequests++;
+			for (DeleteMessageBatchRequestEntry entry : req.entries()) {
+				deleted.add(entry.receiptHandle());
+			}
+			return CompletableFuture.completedFuture(DeleteMessageBatchResponse.builder().build());
+		}
+
+		@Override
+		public synchronized CompletableFuture<ChangeMessageVisibilityBatchResponse> changeMessageVisibilityBatch(
+				ChangeMessageVisibilityBatchRequest req) {
+			for (ChangeMessageVisibilityBatchRequestEntry entry : req.entries()) {
+				visibility.add(entry.receiptHandle() + ":" + entry.visibilityTimeout());
+			}
+			return CompletableFuture.completedFuture(ChangeMessageVisibilityBatchResponse.builder().build());
+		}
+
+		@Override
+		public String serviceName() {
+			return "sqs";
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
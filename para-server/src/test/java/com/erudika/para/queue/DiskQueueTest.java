@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.queue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class DiskQueueTest extends QueueTest {
+
+	public DiskQueueTest() throws IOException {
+		super();
+		q = new DiskQueue("test", Files.createTempDirectory("diskqueue"), 1024);
+	}
+
+	@Test
+	public void testRedeliveryAfterRestart() throws IOException {
+		Path dir = Files.createTempDirectory("diskqueue");
+		DiskQueue dq = new DiskQueue("test", dir, 1024);
+		dq.push("a");
+		dq.push("b");
+		dq.push("c");
+		DiskQueue.Batch batch1 = dq.pull(2, 0);
+		DiskQueue.Batch batch2 = dq.pull(2, 0);
+		assertEquals(Arrays.asList("a", "b"), batch1);
+		assertEquals(Arrays.asList("c"), batch2);
+		// the second batch is committed but the first one isn't
+		dq.commit(batch2);
+
+		DiskQueue restarted = new DiskQueue("test", dir, 1024);
+		DiskQueue.Batch batch = restarted.pull(10, 0);
+		assertEquals(Arrays.asList("a", "b", "c"), batch);
+		restarted.commit(batch);
+		restarted.push("d");
+
+		restarted = new DiskQueue("test", dir, 1024);
+		assertEquals("d", restarted.pull());
+		assertEquals("", restarted.pull());
+	}
+
+	@Test
+	public void testFailedBatchIsRedelivered() throws IOException {
+		Path dir = Files.createTempDirectory("diskqueue");
+		DiskQueue dq = new DiskQueue("test", dir, 1024);
+		dq.push("a");
+		dq.push("b");
+		DiskQueue.Batch batch = dq.pull(1, 0);
+		assertEquals(Collections.singletonList("a"), batch);
+		dq.release(batch, 60000);
+		// not due yet, the next message is delivered in the meantime
+		DiskQueue.Batch next = dq.pull(10, 0);
+		assertEquals(Collections.singletonList("b"), next);
+		dq.commit(next);
+
+		// the failed batch holds the offset back
+		DiskQueue restarted = new DiskQueue("test", dir, 1024);
+		DiskQueue.Batch redelivered = restarted.pull(10, 0);
+		assertEquals(Arrays.asList("a", "b"), redelivered);
+		restarted.release(redelivered, 0);
+		assertEquals(Arrays.asList("a", "b"), restarted.pull(10, 0));
+	}
+
+	@Test
+	public void testDeadLetterAfterMaxRedeliveries() throws IOException {
+		Path dir = Files.createTempDirectory("diskqueue");
+		DiskQueue dq = new DiskQueue("test", dir, 1024);
+		dq.push("poison");
+		dq.push("ok");
+		DiskQueue.Batch batch = dq.pull(1, 0);
+		for (int i = 0; i < DiskQueue.MAX_REDELIVERIES; i++) {
+			dq.release(batch, 0);
+			batch = dq.pull(1, 0);
+			assertEquals(Collections.singletonList("poison"), batch);
+		}
+		dq.release(batch, 0);
+		assertEquals(Collections.singletonList("poison"), Files.readAllLines(dir.resolve("test.dead")));
+		assertEquals("ok", dq.pull());
+		assertEquals("", dq.pull());
+	}
+
+	@Test
+	public void testSegmentRollover() throws IOException {
+		Path dir = Files.createTempDirectory("diskqueue");
+		DiskQueue dq = new DiskQueue("test", dir, 64);
+		for (int i = 0; i < 20; i++) {
+			dq.push("message" + i);
+		}
+		assertTrue(Files.list(dir).filter(p -> p.toString().endsWith(".log")).count() > 1);
+		for (int i = 0; i < 20; i++) {
+			assertEquals("message" + i, dq.pull());
+		}
+		assertEquals("", dq.pull());
+		// only the segment being written to is left
+		assertEquals(1, Files.list(dir).filter(p -> p.toString().endsWith(".log")).count());
+	}
+
+	@Test
+	public void testDelayedPush() throws IOException {
+		Path dir = Files.createTempDirectory("diskqueue");
+		DiskQueue dq = new DiskQueue("test", dir, 1024);
+		dq.pushAt("later", System.currentTimeMillis() + 500);
+		dq.push("now");
+		DiskQueue.Batch batch = dq.pull(10, 0);
+		assertEquals(Collections.singletonList("now"), batch);
+		dq.commit(batch);
+
+		// the delayed message survives a restart and isn't delivered before it's due
+		DiskQueue restarted = new DiskQueue("test", dir, 1024);
+		assertTrue(restarted.pull(10, 0).isEmpty());
+		long start = System.currentTimeMillis();
+		batch = restarted.pull(10, 5000);
+		assertEquals(Collections.singletonList("later"), batch);
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		restarted.commit(batch);
+		assertEquals(0, Files.size(dir.resolve("test.delayed")));
+
+		restarted = new DiskQueue("test", dir, 1024);
+		assertTrue(restarted.pull(10, 0).isEmpty());
+	}
+
+	@Test
+	public void testDelayedFileIsCompacted() throws IOException {
+		Path dir = Files.createTempDirectory("diskqueue");
+		DiskQueue dq = new DiskQueue("test", dir, 1024);
+		long now = System.currentTimeMillis();
+		dq.pushAt("waiting", now + 60000);
+		for (int i = 0; i < 100; i++) {
+			dq.pushAt("message" + i, now - 1);
+		}
+		assertTrue(Files.size(dir.resolve("test.delayed")) > 1024);
+		DiskQueue.Batch batch = dq.pull(200, 0);
+		assertEquals(100, batch.size());
+		assertEquals("message99", batch.get(99));
+		dq.commit(batch);
+		// only the message which is still waiting is left
+		assertTrue(Files.size(dir.resolve("test.delayed")) < 64);
+
+		DiskQueue restarted = new DiskQueue("test", dir, 1024);
+		assertTrue(restarted.pull(200, 0).isEmpty());
+		assertEquals("", restarted.pull());
+	}
+}
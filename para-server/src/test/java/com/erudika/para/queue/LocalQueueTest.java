@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.queue;
+
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class LocalQueueTest extends QueueTest {
+
+	public LocalQueueTest() {
+		super();
+		q = new LocalQueue();
+	}
+
+	@Test
+	public void testBatchPull() {
+		LocalQueue lq = new LocalQueue("test", 3);
+		lq.push("a");
+		lq.push("b");
+		lq.push("c");
+		lq.push("d"); // full - dropped
+		assertEquals(Arrays.asList("a", "b"), lq.pull(2, 0));
+		assertEquals(Arrays.asList("c"), lq.pull(2, 0));
+		long start = System.currentTimeMillis();
+		assertTrue(lq.pull(2, 100).isEmpty());
+		assertTrue(System.currentTimeMillis() - start >= 100);
+	}
+
+	@Test
+	public void testDelayedPush() {
+		LocalQueue lq = new LocalQueue("test", 3);
+		lq.push("later", 1);
+		lq.push("now");
+		assertEquals(Arrays.asList("now"), lq.pull(10, 0));
+		assertEquals("", lq.pull());
+		// the wait ends as soon as the delayed message is due
+		long start = System.currentTimeMillis();
+		assertEquals(Arrays.asList("later"), lq.pull(10, 5000));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertTrue(lq.pull(10, 0).isEmpty());
+	}
+}
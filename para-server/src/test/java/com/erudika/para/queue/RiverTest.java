@@ -0,0 +1,298 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.queue;
+
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.core.utils.CoreUtils;
+import com.erudika.para.persistence.DAO;
+import com.erudika.para.persistence.MockDAO;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class RiverTest {
+
+	private DAO dao;
+	private Queue queue;
+	private List<Integer> updateAllCalls;
+	private List<String> events;
+	private volatile CountDownLatch writeGate;
+	private CountDownLatch writing;
+	private TestRiver river;
+
+	@Before
+	public void setUp() {
+		updateAllCalls = new ArrayList<>();
+		events = Collections.synchronizedList(new ArrayList<>());
+		dao = CoreUtils.getInstance().getDao();
+		queue = CoreUtils.getInstance().getQueue();
+		CoreUtils.getInstance().setQueue(new MockQueue() {
+			@Override
+			public void push(String task, int delaySeconds) {
+				if (task.contains("unqueueable")) {
+					throw new IllegalStateException("push failed");
+				}
+				events.add("pushed");
+			}
+		});
+		CoreUtils.getInstance().setDao(new MockDAO() {
+			public <P extends ParaObject> void createAll(String appid, List<P> objects) {
+				if ("badapp".equals(appid)) {
+					throw new IllegalStateException("write failed");
+				}
+				if (writeGate != null) {
+					writing.countDown();
+					await(writeGate);
+				}
+				super.createAll(appid, objects);
+			}
+
+			public <P extends ParaObject> void updateAll(String appid, List<P> objects) {
+				updateAllCalls.add(objects.size());
+				super.updateAll(appid, objects);
+			}
+		});
+		river = new TestRiver();
+	}
+
+	@After
+	public void tearDown() {
+		CoreUtils.getInstance().setDao(dao);
+		CoreUtils.getInstance().setQueue(queue);
+	}
+
+	@Test
+	public void testFailedAppOnlyFailsItsBatches() {
+		List<String> batch1 = Arrays.asList(create("riverapp1", "r1"), "{\"appid\":\"riverapp1\",\"type\": [broken");
+		List<String> batch2 = Arrays.asList(create("badapp", "r2"));
+		List<String> batch3 = Arrays.asList(create("riverapp2", "r3"));
+
+		assertEquals(2, river.processWindow(Arrays.asList(batch1, batch2, batch3)));
+		// the malformed message is skipped, the batch with the failed app is delivered again
+		assertEquals(Arrays.asList(true, false, true), river.results);
+		assertNotNull(CoreUtils.getInstance().getDao().read("riverapp1", "r1"));
+		assertNull(CoreUtils.getInstance().getDao().read("badapp", "r2"));
+		assertNotNull(CoreUtils.getInstance().getDao().read("riverapp2", "r3"));
+	}
+
+	@Test
+	public void testUpdatesAreMerged() {
+		Sysprop s = new Sysprop("r4");
+		s.setName("old");
+		CoreUtils.getInstance().getDao().create("riverapp3", s);
+
+		List<String> batch1 = Arrays.asList(update("riverapp3", "r4", "name", "new"));
+		List<String> batch2 = Arrays.asList(update("riverapp3", "r4", "color", "red"),
+				update("riverapp3", "missing", "name", "none"));
+
+		assertEquals(1, river.processWindow(Arrays.asList(batch1, batch2)));
+		assertEquals(Arrays.asList(true, true), river.results);
+		// one write for both updates of the same object
+		assertEquals(Collections.singletonList(1), updateAllCalls);
+		Sysprop updated = CoreUtils.getInstance().getDao().read("riverapp3", "r4");
+		assertEquals("new", updated.getName());
+		assertEquals("red", updated.getProperty("color"));
+	}
+
+	@Test
+	public void testDeleteCancelsUpdate() {
+		CoreUtils.getInstance().getDao().create("riverapp4", new Sysprop("r5"));
+		Map<String, Object> delete = new LinkedHashMap<>();
+		delete.put("_delete", "true");
+		List<String> batch = Arrays.asList(update("riverapp4", "r5", "name", "new"),
+				message("riverapp4", "r5", delete));
+
+		assertEquals(1, river.processWindow(Collections.singletonList(batch)));
+		assertEquals(Collections.singletonList(true), river.results);
+		assertEquals(Collections.emptyList(), updateAllCalls);
+		assertNull(CoreUtils.getInstance().getDao().read("riverapp4", "r5"));
+	}
+
+	@Test
+	public void testBatchWithWebhookIsAckedAfterDelivery() throws InterruptedException {
+		// nothing listens on port 1, so the delivery fails and the payload is queued for a retry
+		List<String> batch = Arrays.asList(webhook("riverapp5", "w1", "http://127.0.0.1:1/hook", 0),
+				create("riverapp5", "r6"));
+
+		assertEquals(2, river.processWindow(Collections.singletonList(batch)));
+		for (int i = 0; i < 500 && river.results.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(Collections.singletonList(true), river.results);
+		assertEquals(Arrays.asList("pushed", "processed"), events);
+		assertNotNull(CoreUtils.getInstance().getDao().read("riverapp5", "r6"));
+	}
+
+	@Test
+	public void testBatchWithUnqueuedWebhookIsDeliveredAgain() {
+		// the retry isn't due yet and can't be pushed back to the queue
+		List<String> batch1 = Arrays.asList(webhook("riverapp6", "w2", "http://127.0.0.1:1/unqueueable",
+				System.currentTimeMillis() + 60000));
+		List<String> batch2 = Arrays.asList(create("riverapp6", "r7"));
+
+		assertEquals(1, river.processWindow(Arrays.asList(batch1, batch2)));
+		assertEquals(Arrays.asList(false, true), river.results);
+	}
+
+	@Test
+	public void testWorkersPerRiver() throws InterruptedException {
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		CountDownLatch pulling = new CountDownLatch(3);
+		TestRiver pool = new TestRiver() {
+			@Override
+			List<String> pullMessages() {
+				threads.add(Thread.currentThread().getName());
+				pulling.countDown();
+				await(pulling);
+				return super.pullMessages();
+			}
+		};
+		pool.start("pooltest", 3);
+		try {
+			// all workers pull at the same time, each on a thread of its own
+			assertTrue(pulling.await(5, TimeUnit.SECONDS));
+			assertEquals(new HashSet<>(Arrays.asList("river-pooltest-1", "river-pooltest-2", "river-pooltest-3")),
+					threads);
+		} finally {
+			pool.stop();
+		}
+	}
+
+	@Test
+	public void testStopDrainsBatchesInFlight() throws InterruptedException {
+		BlockingQueue<List<String>> queued = new LinkedBlockingQueue<>();
+		queued.add(Collections.singletonList(create("riverapp7", "r8")));
+		queued.add(Collections.singletonList(create("riverapp8", "r9")));
+		writing = new CountDownLatch(2);
+		writeGate = new CountDownLatch(1);
+		TestRiver pool = new TestRiver() {
+			@Override
+			List<String> pullMessages() {
+				List<String> batch = queued.poll();
+				return (batch == null) ? Collections.emptyList() : batch;
+			}
+		};
+		pool.start("draintest", 2);
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+		Thread stopping = new Thread(pool::stop);
+		stopping.start();
+		// stop() waits for the batches being written
+		stopping.join(200);
+		assertTrue(stopping.isAlive());
+		assertTrue(pool.results.isEmpty());
+
+		writeGate.countDown();
+		stopping.join(5000);
+		assertFalse(stopping.isAlive());
+		assertEquals(Arrays.asList(true, true), pool.results);
+		assertNotNull(CoreUtils.getInstance().getDao().read("riverapp7", "r8"));
+		assertNotNull(CoreUtils.getInstance().getDao().read("riverapp8", "r9"));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String webhook(String appid, String id, String targetUrl, long nextAttemptAt) {
+		Map<String, Object> fields = new LinkedHashMap<>();
+		fields.put("targetUrl", targetUrl);
+		fields.put("method", "create");
+		fields.put("payload", "x");
+		fields.put("signature", "x");
+		fields.put("urlEncoded", false);
+		fields.put("nextAttemptAt", nextAttemptAt);
+		return message(appid, "webhookpayload", id, fields);
+	}
+
+	private static String create(String appid, String id) {
+		Map<String, Object> fields = new LinkedHashMap<>();
+		fields.put("_create", "true");
+		return message(appid, id, fields);
+	}
+
+	private static String update(String appid, String id, String field, String value) {
+		return message(appid, id, Collections.singletonMap(field, value));
+	}
+
+	private static String message(String appid, String id, Map<String, Object> fields) {
+		return message(appid, "sysprop", id, fields);
+	}
+
+	private static String message(String appid, String type, String id, Map<String, Object> fields) {
+		StringBuilder sb = new StringBuilder("{\"appid\":\"").append(appid).
+				append("\",\"type\":\"").append(type).append("\",\"id\":\"").append(id).append("\"");
+		for (Map.Entry<String, Object> field : fields.entrySet()) {
+			sb.append(",\"").append(field.getKey()).append("\":");
+			if (field.getValue() instanceof String) {
+				sb.append("\"").append(field.getValue()).append("\"");
+			} else {
+				sb.append(field.getValue());
+			}
+		}
+		return sb.append("}").toString();
+	}
+
+	private class TestRiver extends River {
+
+		private final List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		List<String> pullMessages() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		long idleSleepMillis() {
+			return 10;
+		}
+
+		@Override
+		void processed(List<String> messages, boolean success) {
+			events.add("processed");
+			results.add(success);
+		}
+	}
+}
@@ -37,12 +37,17 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.inject.Binder;
 import com.google.inject.Module;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import org.junit.AfterClass;
 import static org.junit.Assert.*;
@@ -137,6 +142,52 @@ public class RestUtilsTest {
 		assertNull(CoreUtils.getInstance().getDao().read(t.getId()));
 	}
 
+	@Test
+	public void testGetBatchCreateResponse() throws JsonProcessingException {
+		App rootApp = new App(Config.getConfigParam("app_name", ""));
+		List<Tag> tags = new ArrayList<>();
+		for (int i = 0; i < 250; i++) {
+			tags.add(new Tag("batchtag" + i));
+		}
+		Response res = getBatchCreateResponse(rootApp, getInputStream(tags));
+		assertEquals(Status.OK.getStatusCode(), res.getStatus());
+		assertEquals(250, ((List<?>) res.getEntity()).size());
+		assertNotNull(CoreUtils.getInstance().getDao().read(tags.get(0).getId()));
+		assertNotNull(CoreUtils.getInstance().getDao().read(tags.get(249).getId()));
+
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), getBatchCreateResponse(null, getInputStream(tags)).getStatus());
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), getBatchCreateResponse(rootApp, null).getStatus());
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), getBatchCreateResponse(rootApp,
+				getInputStream(new Tag("single"))).getStatus());
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), getBatchCreateResponse(rootApp,
+				new ByteArrayInputStream("[{\"type\":\"tag\", \"tag\":".getBytes())).getStatus());
+
+		// a malformed object fails its chunk, the chunks written before it are reported
+		List<Tag> more = new ArrayList<>();
+		for (int i = 0; i < 150; i++) {
+			more.add(new Tag("brokentag" + i));
+		}
+		String json = ParaObjectUtils.getJsonWriterNoIdent().writeValueAsString(more);
+		String broken = json.substring(0, json.length() - 1) + ", {\"type\": }]";
+		res = getBatchCreateResponse(rootApp, new ByteArrayInputStream(broken.getBytes()));
+		assertEquals(Status.BAD_REQUEST.getStatusCode(), res.getStatus());
+		assertEquals(100, ((List<?>) ((Map<?, ?>) res.getEntity()).get("created")).size());
+		assertNotNull(CoreUtils.getInstance().getDao().read(more.get(99).getId()));
+		assertNull(CoreUtils.getInstance().getDao().read(more.get(100).getId()));
+
+		// a read error after some chunks are written reports them too
+		InputStream failing = new SequenceInputStream(new ByteArrayInputStream(
+				ParaObjectUtils.getJsonWriterNoIdent().writeValueAsString(tags).replace("]", ",").getBytes()),
+				new InputStream() {
+					public int read() throws IOException {
+						throw new IOException("connection reset");
+					}
+				});
+		res = getBatchCreateResponse(rootApp, failing);
+		assertEquals(Status.INTERNAL_SERVER_ERROR.getStatusCode(), res.getStatus());
+		assertEquals(200, ((List<?>) ((Map<?, ?>) res.getEntity()).get("created")).size());
+	}
+
 	@Test
 	public void testRegisterNewTypes() {
 		App app = new App("test");
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.utils;
+
+import com.erudika.para.Para;
+import com.erudika.para.core.App;
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.persistence.DAO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class AppRegistryTest {
+
+	private final AppRegistry registry = AppRegistry.getInstance();
+
+	@Before
+	public void setUp() {
+		registry.clear();
+	}
+
+	@Test
+	public void testGetApp() {
+		assertNull(registry.getApp(null));
+		assertNull(registry.getApp("registry-missing"));
+
+		App app = new App("registry-test1");
+		app.create();
+		assertSame(app, registry.getApp("registry-test1"));
+		assertSame(app, registry.getApp(app.getId()));
+
+		app.addSetting("foo", "bar");
+		assertEquals("bar", registry.getApp("registry-test1").getSetting("foo"));
+
+		app.delete();
+		assertNull(registry.getApp("registry-test1"));
+	}
+
+	@Test
+	public void testRefresh() {
+		DAO dao = Para.getDAO();
+		App app = new App("registry-test2");
+		dao.create(app.getAppid(), app);
+		App resident = registry.getApp("registry-test2");
+		assertEquals(app.getId(), resident.getId());
+		assertSame(resident, registry.getApp("registry-test2"));
+
+		// changed behind the registry's back - served from memory until the next refresh
+		App changed = new App("registry-test2");
+		changed.setName("changed");
+		dao.create(changed.getAppid(), changed);
+		assertSame(resident, registry.getApp("registry-test2"));
+		// a cached copy doesn't hide the change
+		Para.getCache().put(Config.getRootAppIdentifier(), app.getId(), app);
+		assertEquals(1, registry.refresh());
+		assertEquals("changed", registry.getApp("registry-test2").getName());
+		assertFalse(Para.getCache().contains(Config.getRootAppIdentifier(), app.getId()));
+
+		dao.delete(changed.getAppid(), changed);
+		assertEquals(0, registry.refresh());
+		assertNull(registry.getApp("registry-test2"));
+	}
+
+	@Test
+	public void testEvictOnWrite() throws Exception {
+		DAO dao = Para.getDAO();
+		App app = new App("registry-test3");
+		dao.create(app.getAppid(), app);
+		App resident = registry.getApp("registry-test3");
+
+		App changed = new App("registry-test3");
+		changed.setName("changed");
+		dao.create(changed.getAppid(), changed);
+		registry.onPostInvoke(DAO.class.getMethod("read", String.class, String.class),
+				new Object[]{changed.getAppid(), changed.getId()}, changed);
+		assertSame(resident, registry.getApp("registry-test3"));
+		registry.onPostInvoke(DAO.class.getMethod("update", String.class, ParaObject.class),
+				new Object[]{changed.getAppid(), changed}, null);
+		assertEquals("changed", registry.getApp("registry-test3").getName());
+		dao.delete(changed.getAppid(), changed);
+	}
+}
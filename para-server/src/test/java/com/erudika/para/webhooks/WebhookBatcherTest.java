@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.core.Sysprop;
+import com.erudika.para.core.Webhook;
+import com.erudika.para.core.utils.CoreUtils;
+import com.erudika.para.core.utils.ParaObjectUtils;
+import com.erudika.para.queue.MockQueue;
+import com.erudika.para.queue.Queue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class WebhookBatcherTest {
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private Queue queue;
+	private BlockingQueue<String> pushed;
+	private WebhookBatcher batcher;
+
+	@Before
+	public void setUp() {
+		queue = CoreUtils.getInstance().getQueue();
+		pushed = new LinkedBlockingQueue<>();
+		CoreUtils.getInstance().setQueue(new MockQueue() {
+			@Override
+			public void push(String task) {
+				pushed.add(task);
+			}
+		});
+		batcher = new WebhookBatcher(scheduler);
+	}
+
+	@After
+	public void tearDown() {
+		CoreUtils.getInstance().setQueue(queue);
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testIsBatched() {
+		Webhook hook = webhook("wh0", null, null);
+		assertFalse(WebhookBatcher.isBatched(hook));
+		hook.setMaxBatchSize(1);
+		assertFalse(WebhookBatcher.isBatched(hook));
+		hook.setMaxBatchSize(2);
+		assertTrue(WebhookBatcher.isBatched(hook));
+	}
+
+	@Test
+	public void testFullBatchIsSent() throws IOException {
+		Webhook hook = webhook("wh1", 3, 60000);
+		batcher.add("app", hook, "create", new Sysprop("s1"));
+		batcher.add("app", hook, "create", new Sysprop("s2"));
+		assertTrue(pushed.isEmpty());
+		// other events are batched separately
+		batcher.add("app", hook, "createAll", Arrays.asList(new Sysprop("s3"), new Sysprop("s4")));
+		assertTrue(pushed.isEmpty());
+		// a list is split across batches, the rest waits for the next one
+		batcher.add("app", hook, "create", Arrays.asList(new Sysprop("s5"), new Sysprop("s6"), new Sysprop("s7")));
+		assertEquals(1, pushed.size());
+		assertEquals(Arrays.asList("s1", "s2", "s5"), items(pushed.poll(), "create"));
+		batcher.add("app", hook, "create", new Sysprop("s8"));
+		assertEquals(1, pushed.size());
+		assertEquals(Arrays.asList("s6", "s7", "s8"), items(pushed.poll(), "create"));
+		batcher.add("app", hook, "createAll", new Sysprop("s9"));
+		assertEquals(Arrays.asList("s3", "s4", "s9"), items(pushed.poll(), "createAll"));
+	}
+
+	@Test
+	public void testBatchIsSentAfterLinger() throws IOException, InterruptedException {
+		Webhook hook = webhook("wh2", 100, 100);
+		batcher.add("app", hook, "update", new Sysprop("s1"));
+		batcher.add("app", hook, "update", new Sysprop("s2"));
+		assertTrue(pushed.isEmpty());
+		String payload = pushed.poll(5, TimeUnit.SECONDS);
+		assertNotNull(payload);
+		assertEquals(Arrays.asList("s1", "s2"), items(payload, "update"));
+		// sent only once
+		assertNull(pushed.poll(300, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testFlushAll() throws IOException {
+		Webhook hook1 = webhook("wh3", 100, 60000);
+		Webhook hook2 = webhook("wh4", 100, 60000);
+		batcher.add("app", hook1, "delete", new Sysprop("s1"));
+		batcher.add("app", hook1, "update", new Sysprop("s2"));
+		batcher.add("app", hook2, "delete", new Sysprop("s3"));
+		assertTrue(pushed.isEmpty());
+
+		batcher.flushAll();
+		assertEquals(3, pushed.size());
+		List<List<String>> batches = new ArrayList<>();
+		for (String payload : pushed) {
+			Map<String, Object> data = ParaObjectUtils.getJsonReader(Map.class).readValue(payload);
+			batches.add(items(payload, (String) data.get("method")));
+		}
+		assertTrue(batches.contains(Arrays.asList("s1")));
+		assertTrue(batches.contains(Arrays.asList("s2")));
+		assertTrue(batches.contains(Arrays.asList("s3")));
+
+		// nothing is left to send
+		pushed.clear();
+		batcher.flushAll();
+		assertTrue(pushed.isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> items(String payload, String event) throws IOException {
+		Map<String, Object> data = ParaObjectUtils.getJsonReader(Map.class).readValue(payload);
+		assertEquals(event, data.get("method"));
+		Map<String, Object> body = ParaObjectUtils.getJsonReader(Map.class).readValue((String) data.get("payload"));
+		assertEquals(event, body.get("event"));
+		List<String> ids = new ArrayList<>();
+		for (Map<String, Object> item : (List<Map<String, Object>>) body.get("items")) {
+			ids.add((String) item.get("id"));
+		}
+		return ids;
+	}
+
+	private static Webhook webhook(String id, Integer maxBatchSize, Integer maxLingerMillis) {
+		Webhook hook = new Webhook("http://localhost/hook");
+		hook.setId(id);
+		hook.setSecret("secret");
+		hook.setMaxBatchSize(maxBatchSize);
+		hook.setMaxLingerMillis(maxLingerMillis);
+		return hook;
+	}
+}
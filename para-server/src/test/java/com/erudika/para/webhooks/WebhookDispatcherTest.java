@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.webhooks.WebhookDispatcher.Result;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class WebhookDispatcherTest {
+
+	private final FakeSender sender = new FakeSender();
+	private final List<Result> results = Collections.synchronizedList(new ArrayList<>());
+	private final BlockingQueue<Result> done = new LinkedBlockingQueue<>();
+	private WebhookDispatcher dispatcher;
+
+	@After
+	public void tearDown() {
+		sender.gate.countDown();
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+		System.clearProperty("para.webhooks.timeout_seconds");
+	}
+
+	@Test
+	public void testBreakerOpensAndCloses() throws InterruptedException {
+		dispatcher = new WebhookDispatcher(sender, 2, 4, 10, 2, 200);
+		sender.ok = false;
+		assertEquals(Result.FAILED, send("http://localhost/hook"));
+		assertEquals(Result.FAILED, send("http://localhost/hook"));
+		// open - requests are rejected without a connection
+		assertFalse(dispatcher.dispatch(new HttpPost("http://localhost/hook"), done::add));
+		assertEquals(2, sender.requests.size());
+		// other hosts aren't affected
+		sender.ok = true;
+		assertEquals(Result.DELIVERED, send("http://127.0.0.1/hook"));
+
+		// half-open - a failed probe opens the breaker again
+		Thread.sleep(250);
+		sender.ok = false;
+		assertEquals(Result.FAILED, send("http://localhost/hook"));
+		assertFalse(dispatcher.dispatch(new HttpPost("http://localhost/hook"), done::add));
+
+		// half-open - a single probe is let through and closes the breaker if it succeeds
+		Thread.sleep(250);
+		sender.ok = true;
+		assertTrue(dispatcher.dispatch(new HttpPost("http://localhost/slow"), done::add));
+		awaitRequests(5);
+		assertFalse(dispatcher.dispatch(new HttpPost("http://localhost/hook"), done::add));
+		sender.gate.countDown();
+		assertEquals(Result.DELIVERED, done.poll(5, TimeUnit.SECONDS));
+		assertEquals(Result.DELIVERED, send("http://localhost/hook"));
+	}
+
+	@Test
+	public void testLimitsPerHost() throws InterruptedException {
+		dispatcher = new WebhookDispatcher(sender, 4, 1, 1, 5, 1000);
+		// one request in progress and one waiting, the third one is rejected
+		assertTrue(dispatcher.dispatch(new HttpPost("http://localhost/slow"), done::add));
+		assertTrue(dispatcher.dispatch(new HttpPost("http://localhost/slow"), done::add));
+		assertFalse(dispatcher.dispatch(new HttpPost("http://localhost/slow"), done::add));
+		awaitRequests(1);
+
+		// a slow host doesn't hold up the others
+		assertEquals(Result.DELIVERED, send("http://127.0.0.1/hook"));
+		assertEquals(2, sender.requests.size());
+
+		sender.gate.countDown();
+		assertEquals(Result.DELIVERED, done.poll(5, TimeUnit.SECONDS));
+		assertEquals(Result.DELIVERED, done.poll(5, TimeUnit.SECONDS));
+		assertEquals(3, sender.requests.size());
+	}
+
+	@Test
+	public void testShutdownRequeuesPendingRequests() throws InterruptedException {
+		System.setProperty("para.webhooks.timeout_seconds", "1");
+		dispatcher = new WebhookDispatcher(sender, 1, 1, 1000, 5, 1000);
+		int pending = 500;
+		CountDownLatch completed = new CountDownLatch(pending + 1);
+		for (int i = 0; i <= pending; i++) {
+			assertTrue(dispatcher.dispatch(new HttpPost("http://localhost/slow"), result -> {
+				results.add(result);
+				completed.countDown();
+			}));
+		}
+		// the request in progress is interrupted, the rest are never sent
+		dispatcher.shutdown();
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(pending, Collections.frequency(results, Result.NOT_SENT));
+		assertEquals(1, Collections.frequency(results, Result.FAILED));
+
+		// requests dispatched after shutdown aren't sent either
+		assertEquals(Result.NOT_SENT, send("http://localhost/hook"));
+		dispatcher = null;
+	}
+
+	private Result send(String url) throws InterruptedException {
+		assertTrue(dispatcher.dispatch(new HttpPost(url), done::add));
+		return done.poll(5, TimeUnit.SECONDS);
+	}
+
+	private void awaitRequests(int count) throws InterruptedException {
+		for (int i = 0; i < 500 && sender.requests.size() < count; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, sender.requests.size());
+	}
+
+	/**
+	 * Delivers or fails every request. Requests to {@code /slow} wait until the gate is opened.
+	 */
+	static class FakeSender implements Predicate<HttpPost> {
+
+		private final CountDownLatch gate = new CountDownLatch(1);
+		private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+		private volatile boolean ok = true;
+
+		@Override
+		public boolean test(HttpPost request) {
+			requests.add(request.getURI().getPath());
+			if (request.getURI().getPath().endsWith("/slow")) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			return ok;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.core.ParaObject;
+import com.erudika.para.core.Webhook;
+import com.erudika.para.core.utils.CoreUtils;
+import com.erudika.para.search.MockSearch;
+import com.erudika.para.search.Search;
+import com.erudika.para.utils.Pager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class WebhookIndexTest {
+
+	private Search search;
+	private FakeSearch fakeSearch;
+	private WebhookIndex index;
+
+	@Before
+	public void setUp() {
+		search = CoreUtils.getInstance().getSearch();
+		fakeSearch = new FakeSearch();
+		CoreUtils.getInstance().setSearch(fakeSearch);
+		index = new WebhookIndex();
+	}
+
+	@After
+	public void tearDown() {
+		CoreUtils.getInstance().setSearch(search);
+	}
+
+	@Test
+	public void testFindByEventAndType() {
+		Webhook all = webhook("wh1", null);
+		all.setCreate(true);
+		Webhook cats = webhook("wh2", "Cat");
+		cats.setCreate(true);
+		cats.setUpdate(true);
+		fakeSearch.hooks = Arrays.asList(all, cats);
+
+		assertEquals(Arrays.asList(all, cats), index.find("app", "create", "cat"));
+		assertEquals(Collections.singletonList(all), index.find("app", "create", "dog"));
+		assertEquals(Collections.singletonList(cats), index.find("app", "update", "cat"));
+		assertTrue(index.find("app", "update", "dog").isEmpty());
+		assertTrue(index.find("app", "deleteAll", "cat").isEmpty());
+		assertEquals(1, fakeSearch.searches);
+	}
+
+	@Test
+	public void testPutAndRemove() {
+		Webhook hook = webhook("wh3", null);
+		hook.setDelete(true);
+		index.put("app", hook);
+		assertEquals(Collections.singletonList(hook), index.find("app", "delete", "cat"));
+
+		Webhook inactive = webhook("wh3", null);
+		inactive.setDelete(true);
+		inactive.setActive(false);
+		index.put("app", inactive);
+		assertTrue(index.find("app", "delete", "cat").isEmpty());
+
+		index.put("app", hook);
+		index.remove("app", hook.getId());
+		assertTrue(index.find("app", "delete", "cat").isEmpty());
+	}
+
+	@Test
+	public void testRefreshKeepsLocalChanges() {
+		Webhook old = webhook("wh4", null);
+		old.setCreate(true);
+		fakeSearch.hooks = Collections.singletonList(old);
+		assertEquals(Collections.singletonList(old), index.find("app", "create", null));
+
+		// written on this node, but not in the search results yet
+		Webhook added = webhook("wh5", null);
+		added.setCreate(true);
+		index.put("app", added);
+		index.remove("app", old.getId());
+		index.refresh("app");
+		assertEquals(Collections.singletonList(added), index.find("app", "create", null));
+		assertEquals(2, fakeSearch.searches);
+	}
+
+	@Test
+	public void testRefreshFailureKeepsSnapshot() {
+		Webhook hook = webhook("wh6", null);
+		hook.setUpdate(true);
+		fakeSearch.hooks = Collections.singletonList(hook);
+		assertEquals(Collections.singletonList(hook), index.find("app", "update", null));
+
+		fakeSearch.fail = true;
+		index.refresh("app");
+		assertEquals(Collections.singletonList(hook), index.find("app", "update", null));
+	}
+
+	private static Webhook webhook(String id, String typeFilter) {
+		Webhook webhook = new Webhook("http://localhost/hook");
+		webhook.setId(id);
+		webhook.setActive(true);
+		webhook.setTypeFilter(typeFilter);
+		return webhook;
+	}
+
+	/**
+	 * Returns a fixed list of webhooks in a single page.
+	 */
+	private static class FakeSearch extends MockSearch {
+
+		private List<Webhook> hooks = Collections.emptyList();
+		private boolean fail;
+		private int searches;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <P extends ParaObject> List<P> findTerms(String appid, String type, Map<String, ?> terms,
+				boolean matchAll, Pager... pager) {
+			if (fail) {
+				throw new IllegalStateException("search is down");
+			}
+			if (pager[0].getLastKey() != null) {
+				return Collections.emptyList();
+			}
+			searches++;
+			pager[0].setLastKey("last");
+			return (List<P>) new ArrayList<>(hooks);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013-2020 Erudika. https://erudika.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * For issues and patches go to: https://github.com/erudika
+ */
+package com.erudika.para.webhooks;
+
+import com.erudika.para.core.Webhook;
+import com.erudika.para.core.utils.CoreUtils;
+import com.erudika.para.core.utils.ParaObjectUtils;
+import com.erudika.para.queue.MockQueue;
+import com.erudika.para.queue.Queue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alex Bogdanovski [alex@erudika.com]
+ */
+public class WebhookUtilsTest {
+
+	private Queue queue;
+	private List<Integer> delays;
+	private List<String> pushed;
+
+	@Before
+	public void setUp() {
+		queue = CoreUtils.getInstance().getQueue();
+		delays = new ArrayList<>();
+		pushed = new ArrayList<>();
+		CoreUtils.getInstance().setQueue(new MockQueue() {
+			@Override
+			public void push(String task, int delaySeconds) {
+				pushed.add(task);
+				delays.add(delaySeconds);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		CoreUtils.getInstance().setQueue(queue);
+	}
+
+	@Test
+	public void testRetryDelay() {
+		assertEquals(10000, WebhookUtils.retryDelay(1));
+		assertEquals(20000, WebhookUtils.retryDelay(2));
+		assertEquals(40000, WebhookUtils.retryDelay(3));
+		// capped at the maximum delay, even for very large attempt numbers
+		assertEquals(3600000, WebhookUtils.retryDelay(10));
+		assertEquals(3600000, WebhookUtils.retryDelay(100));
+	}
+
+	@Test
+	public void testRetryLater() throws IOException {
+		long now = System.currentTimeMillis();
+		WebhookUtils.retryLater("app", "wh1", payload(2));
+		Map<String, Object> retry = lastPushed();
+		assertEquals(3, ((Number) retry.get("attempt")).intValue());
+		assertTrue(((Number) retry.get("nextAttemptAt")).longValue() >= now + WebhookUtils.retryDelay(3));
+		assertEquals(Integer.valueOf(40), delays.get(0));
+		assertEquals("http://localhost/hook", retry.get("targetUrl"));
+	}
+
+	@Test
+	public void testRetryLaterDisablesWebhook() {
+		Webhook hook = new Webhook("http://localhost/hook");
+		hook.setId("wh2");
+		hook.setActive(true);
+		CoreUtils.getInstance().getDao().create("app", hook);
+
+		WebhookUtils.retryLater("app", hook.getId(), payload(9));
+		assertTrue(pushed.isEmpty());
+		Webhook disabled = CoreUtils.getInstance().getDao().read("app", hook.getId());
+		assertFalse(disabled.getActive());
+		assertTrue(disabled.getTooManyFailures());
+	}
+
+	@Test
+	public void testRequeueIsNotAnAttempt() throws IOException {
+		WebhookUtils.requeue("wh3", payload(2));
+		Map<String, Object> retry = lastPushed();
+		assertEquals(2, ((Number) retry.get("attempt")).intValue());
+		assertEquals(Integer.valueOf(30), delays.get(0));
+	}
+
+	@Test
+	public void testRetryIsPushedBackUntilDue() throws IOException {
+		Map<String, Object> retry = payload(1);
+		retry.put("nextAttemptAt", System.currentTimeMillis() + 60000);
+		assertEquals(0, WebhookUtils.processWebhookPayload("app", "wh4", retry));
+		assertEquals(1, pushed.size());
+		assertTrue(delays.get(0) >= 59 && delays.get(0) <= 60);
+		assertEquals(1, ((Number) lastPushed().get("attempt")).intValue());
+	}
+
+	private Map<String, Object> lastPushed() throws IOException {
+		assertFalse(pushed.isEmpty());
+		return ParaObjectUtils.getJsonReader(Map.class).readValue(pushed.get(pushed.size() - 1));
+	}
+
+	private static Map<String, Object> payload(int attempt) {
+		Map<String, Object> payload = new HashMap<>();
+		payload.put("targetUrl", "http://localhost/hook");
+		payload.put("urlEncoded", false);
+		payload.put("method", "create");
+		payload.put("payload", "{}");
+		payload.put("attempt", attempt);
+		return payload;
+	}
+}